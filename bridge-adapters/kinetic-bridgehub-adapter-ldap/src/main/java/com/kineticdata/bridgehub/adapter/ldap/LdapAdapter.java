@@ -2,7 +2,6 @@ package com.kineticdata.bridgehub.adapter.ldap;
 
 // Import the necessary core Java classes
 import java.util.*;
-import java.text.*;
 // Import the classes necessary for communicating with Ldap
 import javax.naming.*;
 import javax.naming.directory.*;
@@ -16,16 +15,12 @@ import com.kineticdata.bridgehub.adapter.BridgeRequest;
 import com.kineticdata.bridgehub.adapter.Count;
 import com.kineticdata.bridgehub.adapter.Record;
 import com.kineticdata.bridgehub.adapter.RecordList;
-// import Matcher and Pattern
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
 
 // Import servlet libraries
 import com.kineticdata.commons.v1.config.ConfigurableProperty;
 import com.kineticdata.commons.v1.config.ConfigurablePropertyMap;
 import java.io.IOException;
 
-import org.json.simple.JSONValue;
 import org.slf4j.LoggerFactory;
 
 /**
@@ -64,15 +59,167 @@ public class LdapAdapter implements BridgeAdapter {
         environment.put(Context.SECURITY_AUTHENTICATION, configuration.getValue(Properties.PROPERTY_SECURITY_ANONYMOUS).equalsIgnoreCase("no") ? "simple" : "none");
         // Configure the environment hashtable (this is used to create the
         // LdapContext object responsible for interacting with the server).
-        environment.put(Context.PROVIDER_URL, (configuration.getValue(Properties.PROPERTY_SSL).equalsIgnoreCase("no") ? "ldap://" : "ldaps://") +
-            configuration.getValue(Properties.PROPERTY_SERVER)+":"+configuration.getValue(Properties.PROPERTY_PORT));
+        // The Server property may list several servers, each getting its own
+        // copy of the environment with its own provider url.
+        List<String> serverUrls = LdapServerGroup.parseUrls(configuration.getValue(Properties.PROPERTY_SERVER),
+            configuration.getValue(Properties.PROPERTY_PORT),
+            !configuration.getValue(Properties.PROPERTY_SSL).equalsIgnoreCase("no"));
+        if (serverUrls.isEmpty()) {
+            throw new BridgeError("The "+Properties.PROPERTY_SERVER+" property is blank.");
+        }
+        environment.put(Context.PROVIDER_URL, serverUrls.get(0));
         environment.put(Context.SECURITY_PRINCIPAL, configuration.getValue(Properties.PROPERTY_SECURITY_PRINCIPAL));
         environment.put(Context.SECURITY_CREDENTIALS, configuration.getValue(Properties.PROPERTY_SECURITY_CREDENTIALS));
-        // Set the search base
+        // Set the search base, which may list several bases separated by semicolons
         this.searchBase = configuration.getValue(Properties.PROPERTY_SEARCH_BASE);
+        int searchBaseConcurrency;
+        try {
+            searchBaseConcurrency = Integer.parseInt(StringUtils.defaultIfBlank(
+                configuration.getValue(Properties.PROPERTY_SEARCH_BASE_CONCURRENCY), "4").trim());
+        } catch (NumberFormatException e) {
+            throw new BridgeError("Invalid "+Properties.PROPERTY_SEARCH_BASE_CONCURRENCY+": "+e.getMessage(), e);
+        }
+        if (searchBaseExecutor != null) {
+            searchBaseExecutor.shutdown();
+        }
+        this.searchBaseExecutor = searchBaseConcurrency > 1 && LdapSearchBases.split(searchBase).size() > 1
+            ? buildSearchBaseExecutor(searchBaseConcurrency)
+            : null;
 
         this.maximumPages = Integer.valueOf(configuration.getValue(Properties.PROPERTY_MAXIMUM_PAGES));
         this.pageSize = Integer.valueOf(configuration.getValue(Properties.PROPERTY_PAGE_SIZE));
+        try {
+            long searchTimeLimitSeconds = Long.parseLong(StringUtils.defaultIfBlank(
+                configuration.getValue(Properties.PROPERTY_SEARCH_TIME_LIMIT), "0").trim());
+            // SearchControls takes the time limit as an int of milliseconds
+            this.searchTimeLimit = (int)Math.min(Integer.MAX_VALUE,
+                Math.min(searchTimeLimitSeconds, Integer.MAX_VALUE) * 1000L);
+        } catch (NumberFormatException e) {
+            throw new BridgeError("Invalid "+Properties.PROPERTY_SEARCH_TIME_LIMIT+": "+e.getMessage(), e);
+        }
+        this.serverSideSorting = "yes".equalsIgnoreCase(configuration.getValue(Properties.PROPERTY_SERVER_SIDE_SORTING));
+        this.paginationType = StringUtils.defaultIfBlank(configuration.getValue(Properties.PROPERTY_PAGINATION_TYPE),
+            Properties.PAGINATION_NONE).trim();
+        long countLimit;
+        try {
+            countLimit = Long.parseLong(StringUtils.defaultIfBlank(
+                configuration.getValue(Properties.PROPERTY_COUNT_LIMIT), "0").trim());
+        } catch (NumberFormatException e) {
+            throw new BridgeError("Invalid "+Properties.PROPERTY_COUNT_LIMIT+": "+e.getMessage(), e);
+        }
+        this.countEngine = new LdapCountEngine(LdapCountEngine.DEFAULT_PAGE_SIZE, countLimit);
+
+        // Enable the count cache when a time to live is configured
+        long countCacheTtl;
+        int countCacheSize;
+        try {
+            countCacheTtl = Long.parseLong(StringUtils.defaultIfBlank(
+                configuration.getValue(Properties.PROPERTY_COUNT_CACHE_TTL), "0").trim());
+            countCacheSize = Integer.parseInt(StringUtils.defaultIfBlank(
+                configuration.getValue(Properties.PROPERTY_COUNT_CACHE_SIZE), "1000").trim());
+        } catch (NumberFormatException e) {
+            throw new BridgeError("Invalid count cache configuration: "+e.getMessage(), e);
+        }
+        this.countCache = countCacheTtl > 0
+            ? new LdapTtlCache<String,Long>(countCacheTtl * 1000L, countCacheSize)
+            : null;
+
+        // Share the values repeated across cached results and replicated entries
+        int internPoolSize;
+        try {
+            internPoolSize = Integer.parseInt(StringUtils.defaultIfBlank(
+                configuration.getValue(Properties.PROPERTY_INTERN_POOL_SIZE), "65536").trim());
+        } catch (NumberFormatException e) {
+            throw new BridgeError("Invalid "+Properties.PROPERTY_INTERN_POOL_SIZE+": "+e.getMessage(), e);
+        }
+        this.internPool = new LdapInternPool(internPoolSize);
+
+        // Enable the result cache when a time to live is configured for any structure
+        long resultCacheTtl;
+        long resultCacheMemory;
+        Map<String,Long> resultCacheStructureTtls = LdapResultCache.parseTtls(
+            configuration.getValue(Properties.PROPERTY_RESULT_CACHE_STRUCTURE_TTLS));
+        try {
+            resultCacheTtl = Long.parseLong(StringUtils.defaultIfBlank(
+                configuration.getValue(Properties.PROPERTY_RESULT_CACHE_TTL), "0").trim()) * 1000L;
+            resultCacheMemory = Long.parseLong(StringUtils.defaultIfBlank(
+                configuration.getValue(Properties.PROPERTY_RESULT_CACHE_MEMORY), "32").trim()) * 1024L * 1024L;
+        } catch (NumberFormatException e) {
+            throw new BridgeError("Invalid result cache configuration: "+e.getMessage(), e);
+        }
+        if (resultCache != null) {
+            resultCache.close();
+        }
+        boolean resultCacheEnabled = resultCacheTtl > 0;
+        for (Long ttl : resultCacheStructureTtls.values()) {
+            resultCacheEnabled |= ttl > 0;
+        }
+        this.resultCache = resultCacheEnabled && resultCacheMemory > 0
+            ? new LdapResultCache(resultCacheMemory, resultCacheTtl, resultCacheStructureTtls, internPool)
+            : null;
+
+        // Enable the negative cache of retrieve misses when a time to live is configured
+        long negativeCacheTtl;
+        int negativeCacheSize;
+        try {
+            negativeCacheTtl = Long.parseLong(StringUtils.defaultIfBlank(
+                configuration.getValue(Properties.PROPERTY_NEGATIVE_CACHE_TTL), "0").trim()) * 1000L;
+            negativeCacheSize = Integer.parseInt(StringUtils.defaultIfBlank(
+                configuration.getValue(Properties.PROPERTY_NEGATIVE_CACHE_SIZE), "1000").trim());
+        } catch (NumberFormatException e) {
+            throw new BridgeError("Invalid negative cache configuration: "+e.getMessage(), e);
+        }
+        this.negativeCache = negativeCacheTtl > 0 && negativeCacheSize > 0
+            ? new LdapTtlCache<String,Boolean>(negativeCacheTtl, negativeCacheSize)
+            : null;
+
+        // Share identical concurrent requests unless request coalescing is disabled
+        boolean requestCoalescing = !"no".equalsIgnoreCase(StringUtils.defaultIfBlank(
+            configuration.getValue(Properties.PROPERTY_REQUEST_COALESCING), "Yes").trim());
+        this.searchCoalescer = requestCoalescing
+            ? new LdapRequestCoalescer<RecordList>(LdapAdapter::copyRecordList) : null;
+        this.retrieveCoalescer = requestCoalescing
+            ? new LdapRequestCoalescer<Map<String,Object>>(LdapAdapter::copyRecord) : null;
+
+        // Replace the schema caches, applying the configured time to live
+        long schemaCacheTtl;
+        int schemaCacheSize;
+        try {
+            schemaCacheTtl = Long.parseLong(StringUtils.defaultIfBlank(
+                configuration.getValue(Properties.PROPERTY_SCHEMA_CACHE_TTL), "0").trim()) * 1000L;
+            schemaCacheSize = Integer.parseInt(StringUtils.defaultIfBlank(
+                configuration.getValue(Properties.PROPERTY_SCHEMA_CACHE_SIZE), "5000").trim());
+        } catch (NumberFormatException e) {
+            throw new BridgeError("Invalid schema cache configuration: "+e.getMessage(), e);
+        }
+        attributeSyntaxMap.close();
+        structureMap.close();
+        structureListCache.close();
+        attributeSyntaxMap = buildSyntaxCache(schemaCacheTtl, schemaCacheSize);
+        structureMap = buildStructureCache(schemaCacheTtl, schemaCacheSize);
+        structureListCache = buildStructureListCache(schemaCacheTtl);
+
+        // Read the connection pool settings
+        int poolMinimumSize;
+        int poolMaximumSize;
+        long idleTimeout;
+        long maximumLifetime;
+        long waitTimeout;
+        long connectTimeout;
+        try {
+            poolMinimumSize = Integer.parseInt(configuration.getValue(Properties.PROPERTY_POOL_MINIMUM_SIZE).trim());
+            poolMaximumSize = Integer.parseInt(configuration.getValue(Properties.PROPERTY_POOL_MAXIMUM_SIZE).trim());
+            idleTimeout = Long.parseLong(configuration.getValue(Properties.PROPERTY_POOL_IDLE_TIMEOUT).trim()) * 1000L;
+            maximumLifetime = Long.parseLong(configuration.getValue(Properties.PROPERTY_POOL_MAXIMUM_LIFETIME).trim()) * 1000L;
+            waitTimeout = Long.parseLong(configuration.getValue(Properties.PROPERTY_POOL_WAIT_TIMEOUT).trim()) * 1000L;
+            connectTimeout = Long.parseLong(StringUtils.defaultIfBlank(
+                configuration.getValue(Properties.PROPERTY_CONNECT_TIMEOUT), "0").trim()) * 1000L;
+        } catch (NumberFormatException e) {
+            throw new BridgeError("Invalid connection pool configuration: "+e.getMessage(), e);
+        }
+        if (poolMaximumSize < 1) {
+            throw new BridgeError("The "+Properties.PROPERTY_POOL_MAXIMUM_SIZE+" must be at least 1.");
+        }
         
         // If the username or password are blank and the anonymous authentication is set to 'no', throw an error
         if (
@@ -85,16 +232,123 @@ public class LdapAdapter implements BridgeAdapter {
             throw new BridgeError("Blank security principal or credentials.");
         }
 
+        // Forget what the previously configured server supports
+        this.supportedControls = null;
+        this.projectionCache.clear();
+
+        // Bound the time spent connecting so an unreachable server fails over quickly
+        if (connectTimeout > 0) {
+            environment.put(Properties.ENVIRONMENT_CONNECT_TIMEOUT, String.valueOf(connectTimeout));
+        } else {
+            environment.remove(Properties.ENVIRONMENT_CONNECT_TIMEOUT);
+        }
+
+        // Replace any pool left over from a previous initialization
+        if (contextPool != null) {
+            contextPool.close();
+        }
+        List<LdapServerGroup.Server> servers = new ArrayList<LdapServerGroup.Server>();
+        for (String serverUrl : serverUrls) {
+            final Hashtable<String,String> poolEnvironment = new Hashtable(environment);
+            poolEnvironment.put(Context.PROVIDER_URL, serverUrl);
+            servers.add(new LdapServerGroup.Server(serverUrl, new LdapContextPool(() -> buildContext(poolEnvironment),
+                poolMinimumSize, poolMaximumSize, idleTimeout, maximumLifetime, waitTimeout)));
+        }
+        contextPool = new LdapServerGroup(servers);
+
         // Validate the environmental configuration (server connectivity,
-        // credentials, etc).
+        // credentials, etc).  The validated context is kept by the pool, and
+        // any reachable server is enough to start.
         try {
-            new InitialLdapContext(environment, null);
-        } catch (AuthenticationException e) {
-            throw new BridgeError("Unable to authenticate using the provided credentials.", e);
-        } catch (CommunicationException e) {
-            throw new BridgeError("Unable to connect to the specified LDAP server.", e);
-        } catch (Exception e) {
-            throw new BridgeError("Unknown exception: "+e.getMessage(), e);
+            contextPool.release(contextPool.borrow());
+        } catch (BridgeError e) {
+            contextPool.close();
+            throw e;
+        }
+        contextPool.prefill();
+
+        // Read and parse the whole subschema up front when Schema Preload is
+        // enabled, so requests never look up schema definitions
+        this.subschema = null;
+        if ("yes".equalsIgnoreCase(configuration.getValue(Properties.PROPERTY_SCHEMA_PRELOAD))) {
+            try {
+                this.subschema = execute(LdapSubschema::read);
+                logger.info("Preloaded "+subschema.getStructures().size()+" structures from the subschema.");
+            } catch (BridgeError e) {
+                logger.warn("Unable to preload the subschema, schema definitions will be "+
+                    "looked up on demand: "+e.getMessage());
+            }
+        }
+
+        // Load the attribute index metadata when filters are checked
+        this.unindexedFilterPolicy = StringUtils.defaultIfBlank(
+            configuration.getValue(Properties.PROPERTY_UNINDEXED_FILTER_POLICY), Properties.FILTER_POLICY_IGNORE).trim();
+        this.indexMetadata = null;
+        if (!Properties.FILTER_POLICY_IGNORE.equalsIgnoreCase(unindexedFilterPolicy)) {
+            String indexedAttributes = configuration.getValue(Properties.PROPERTY_INDEXED_ATTRIBUTES);
+            LdapIndexMetadata metadata = new LdapIndexMetadata(StringUtils.isBlank(indexedAttributes)
+                ? Collections.<String>emptyList()
+                : Arrays.asList(indexedAttributes.split(",")), Collections.<String>emptyList());
+            try {
+                metadata = metadata.merge(execute(context -> {
+                    try {
+                        return LdapIndexMetadata.read(context);
+                    } catch (java.io.IOException e) {
+                        throw new BridgeError("Unable to read the attribute index metadata: "+e.getMessage(), e);
+                    }
+                }));
+            } catch (BridgeError e) {
+                logger.warn("Unable to read the attribute index metadata from the schema: "+e.getMessage());
+            }
+            if (metadata.isEmpty()) {
+                logger.warn("No attribute index metadata is available, the "+
+                    Properties.PROPERTY_UNINDEXED_FILTER_POLICY+" will not be applied.");
+            } else {
+                logger.info("Loaded the index metadata of "+metadata.size()+" attributes.");
+                this.indexMetadata = metadata;
+            }
+        }
+
+        // Mirror the replicated structures in memory.  They are loaded in the
+        // background, requests being sent to the directory until then.
+        if (replica != null) {
+            replica.close();
+            replica = null;
+        }
+        String replicaStructures = configuration.getValue(Properties.PROPERTY_REPLICA_STRUCTURES);
+        if (StringUtils.isNotBlank(replicaStructures)) {
+            long replicaPollInterval;
+            long replicaReloadInterval;
+            try {
+                replicaPollInterval = Long.parseLong(StringUtils.defaultIfBlank(
+                    configuration.getValue(Properties.PROPERTY_REPLICA_POLL_INTERVAL), "60").trim()) * 1000L;
+                replicaReloadInterval = Long.parseLong(StringUtils.defaultIfBlank(
+                    configuration.getValue(Properties.PROPERTY_REPLICA_RELOAD_INTERVAL), "3600").trim()) * 1000L;
+            } catch (NumberFormatException e) {
+                throw new BridgeError("Invalid replica configuration: "+e.getMessage(), e);
+            }
+            // Index the attributes filters select replicated entries by
+            List<String> equalityIndexes = Arrays.asList(StringUtils.defaultIfBlank(
+                configuration.getValue(Properties.PROPERTY_REPLICA_EQUALITY_INDEXES), "").split(","));
+            List<String> prefixIndexes = Arrays.asList(StringUtils.defaultIfBlank(
+                configuration.getValue(Properties.PROPERTY_REPLICA_PREFIX_INDEXES), "").split(","));
+            // Update sequence numbers are only comparable on a single server
+            replica = new LdapReplica(new LdapReplica.Source() {
+                @Override
+                public List<String> getFields(String structure) throws BridgeError {
+                    return getStructureFields(structure);
+                }
+
+                @Override
+                public void search(String base, String filter, String[] attributes,
+                    LdapReplica.EntryHandler handler
+                ) throws BridgeError {
+                    replicateEntries(base, filter, attributes, handler);
+                }
+            }, () -> new LdapIndexedEntryStore(equalityIndexes, prefixIndexes), internPool,
+                Arrays.asList(replicaStructures.split(",")), LdapSearchBases.prune(LdapSearchBases.split(searchBase)),
+                contextPool.size() == 1, replicaPollInterval, replicaReloadInterval);
+            replica.start();
         }
     }
 
@@ -131,6 +385,7 @@ public class LdapAdapter implements BridgeAdapter {
 
         // Define the environmental constants
         public static final String ENVIRONMENT_INITIAL_CONTEXT_FACTORY = "com.sun.jndi.ldap.LdapCtxFactory";
+        public static final String ENVIRONMENT_CONNECT_TIMEOUT = "com.sun.jndi.ldap.connect.timeout";
         public static final String ENVIRONMENT_REFERRAL = "follow";
         // Specify the property name constants
         public static final String PROPERTY_SERVER = "Server";
@@ -140,8 +395,49 @@ public class LdapAdapter implements BridgeAdapter {
         public static final String PROPERTY_SECURITY_PRINCIPAL = "Security Principal";
         public static final String PROPERTY_SECURITY_CREDENTIALS = "Security Credentials";
         public static final String PROPERTY_SEARCH_BASE = "Search Base";
+        public static final String PROPERTY_SEARCH_BASE_CONCURRENCY = "Search Base Concurrency";
         public static final String PROPERTY_PAGE_SIZE = "Page Size";
         public static final String PROPERTY_MAXIMUM_PAGES = "Maximum Pages";
+        public static final String PROPERTY_SEARCH_TIME_LIMIT = "Search Time Limit";
+        public static final String PROPERTY_SERVER_SIDE_SORTING = "Server Side Sorting";
+        public static final String PROPERTY_PAGINATION_TYPE = "Pagination Type";
+        public static final String PROPERTY_COUNT_LIMIT = "Count Limit";
+        public static final String PROPERTY_COUNT_CACHE_TTL = "Count Cache TTL";
+        public static final String PROPERTY_COUNT_CACHE_SIZE = "Count Cache Size";
+        public static final String PROPERTY_RESULT_CACHE_TTL = "Result Cache TTL";
+        public static final String PROPERTY_RESULT_CACHE_STRUCTURE_TTLS = "Result Cache Structure TTLs";
+        public static final String PROPERTY_RESULT_CACHE_MEMORY = "Result Cache Memory";
+        public static final String PROPERTY_INTERN_POOL_SIZE = "Intern Pool Size";
+        public static final String PROPERTY_NEGATIVE_CACHE_TTL = "Negative Cache TTL";
+        public static final String PROPERTY_NEGATIVE_CACHE_SIZE = "Negative Cache Size";
+        public static final String PROPERTY_POOL_MINIMUM_SIZE = "Connection Pool Minimum Size";
+        public static final String PROPERTY_POOL_MAXIMUM_SIZE = "Connection Pool Maximum Size";
+        public static final String PROPERTY_POOL_IDLE_TIMEOUT = "Connection Idle Timeout";
+        public static final String PROPERTY_POOL_MAXIMUM_LIFETIME = "Connection Maximum Lifetime";
+        public static final String PROPERTY_POOL_WAIT_TIMEOUT = "Connection Wait Timeout";
+        public static final String PROPERTY_CONNECT_TIMEOUT = "Connect Timeout";
+        public static final String PROPERTY_SCHEMA_CACHE_TTL = "Schema Cache TTL";
+        public static final String PROPERTY_SCHEMA_CACHE_SIZE = "Schema Cache Size";
+        public static final String PROPERTY_SCHEMA_PRELOAD = "Schema Preload";
+        public static final String PROPERTY_REQUEST_COALESCING = "Request Coalescing";
+        public static final String PROPERTY_UNINDEXED_FILTER_POLICY = "Unindexed Filter Policy";
+        public static final String PROPERTY_INDEXED_ATTRIBUTES = "Indexed Attributes";
+        public static final String PROPERTY_REPLICA_STRUCTURES = "Replica Structures";
+        public static final String PROPERTY_REPLICA_POLL_INTERVAL = "Replica Poll Interval";
+        public static final String PROPERTY_REPLICA_RELOAD_INTERVAL = "Replica Reload Interval";
+        public static final String PROPERTY_REPLICA_EQUALITY_INDEXES = "Replica Equality Indexes";
+        public static final String PROPERTY_REPLICA_PREFIX_INDEXES = "Replica Prefix Indexes";
+
+        // Define the pagination types
+        public static final String PAGINATION_NONE = "None";
+        public static final String PAGINATION_TOKEN = "Token";
+        public static final String PAGINATION_OFFSET = "Offset";
+
+        // Define the unindexed filter policies
+        public static final String FILTER_POLICY_IGNORE = "Ignore";
+        public static final String FILTER_POLICY_LOG = "Log";
+        public static final String FILTER_POLICY_WARN = "Warn";
+        public static final String FILTER_POLICY_REJECT = "Reject";
     }
 
     /**
@@ -157,22 +453,100 @@ public class LdapAdapter implements BridgeAdapter {
         new ConfigurableProperty(Properties.PROPERTY_SECURITY_PRINCIPAL).setValue("CN=USERNAME,CN=USERS,DC=DOMAIN,DC=com"),
         new ConfigurableProperty(Properties.PROPERTY_SECURITY_CREDENTIALS).setIsSensitive(true),
         new ConfigurableProperty(Properties.PROPERTY_SEARCH_BASE).setValue("DC=DOMAIN,DC=com"),
+        new ConfigurableProperty(Properties.PROPERTY_SEARCH_BASE_CONCURRENCY).setValue("4"),
         new ConfigurableProperty(Properties.PROPERTY_PAGE_SIZE).setValue("50"),
-        new ConfigurableProperty(Properties.PROPERTY_MAXIMUM_PAGES).setValue("20")
+        new ConfigurableProperty(Properties.PROPERTY_MAXIMUM_PAGES).setValue("20"),
+        new ConfigurableProperty(Properties.PROPERTY_SEARCH_TIME_LIMIT).setValue("0"),
+        new ConfigurableProperty(Properties.PROPERTY_SERVER_SIDE_SORTING).addPossibleValues("Yes","No").setValue("No"),
+        new ConfigurableProperty(Properties.PROPERTY_PAGINATION_TYPE)
+            .addPossibleValues(Properties.PAGINATION_NONE, Properties.PAGINATION_TOKEN, Properties.PAGINATION_OFFSET)
+            .setValue(Properties.PAGINATION_NONE),
+        new ConfigurableProperty(Properties.PROPERTY_COUNT_LIMIT).setValue("0"),
+        new ConfigurableProperty(Properties.PROPERTY_COUNT_CACHE_TTL).setValue("0"),
+        new ConfigurableProperty(Properties.PROPERTY_COUNT_CACHE_SIZE).setValue("1000"),
+        new ConfigurableProperty(Properties.PROPERTY_RESULT_CACHE_TTL).setValue("0"),
+        new ConfigurableProperty(Properties.PROPERTY_RESULT_CACHE_STRUCTURE_TTLS),
+        new ConfigurableProperty(Properties.PROPERTY_RESULT_CACHE_MEMORY).setValue("32"),
+        new ConfigurableProperty(Properties.PROPERTY_INTERN_POOL_SIZE).setValue("65536"),
+        new ConfigurableProperty(Properties.PROPERTY_NEGATIVE_CACHE_TTL).setValue("0"),
+        new ConfigurableProperty(Properties.PROPERTY_NEGATIVE_CACHE_SIZE).setValue("1000"),
+        new ConfigurableProperty(Properties.PROPERTY_POOL_MINIMUM_SIZE).setValue("1"),
+        new ConfigurableProperty(Properties.PROPERTY_POOL_MAXIMUM_SIZE).setValue("10"),
+        new ConfigurableProperty(Properties.PROPERTY_POOL_IDLE_TIMEOUT).setValue("300"),
+        new ConfigurableProperty(Properties.PROPERTY_POOL_MAXIMUM_LIFETIME).setValue("1800"),
+        new ConfigurableProperty(Properties.PROPERTY_POOL_WAIT_TIMEOUT).setValue("30"),
+        new ConfigurableProperty(Properties.PROPERTY_CONNECT_TIMEOUT).setValue("10"),
+        new ConfigurableProperty(Properties.PROPERTY_SCHEMA_CACHE_TTL).setValue("0"),
+        new ConfigurableProperty(Properties.PROPERTY_SCHEMA_CACHE_SIZE).setValue("5000"),
+        new ConfigurableProperty(Properties.PROPERTY_SCHEMA_PRELOAD).addPossibleValues("Yes","No").setValue("No"),
+        new ConfigurableProperty(Properties.PROPERTY_REQUEST_COALESCING).addPossibleValues("Yes","No").setValue("Yes"),
+        new ConfigurableProperty(Properties.PROPERTY_UNINDEXED_FILTER_POLICY)
+            .addPossibleValues(Properties.FILTER_POLICY_IGNORE, Properties.FILTER_POLICY_LOG,
+                Properties.FILTER_POLICY_WARN, Properties.FILTER_POLICY_REJECT)
+            .setValue(Properties.FILTER_POLICY_IGNORE),
+        new ConfigurableProperty(Properties.PROPERTY_INDEXED_ATTRIBUTES),
+        new ConfigurableProperty(Properties.PROPERTY_REPLICA_STRUCTURES),
+        new ConfigurableProperty(Properties.PROPERTY_REPLICA_POLL_INTERVAL).setValue("60"),
+        new ConfigurableProperty(Properties.PROPERTY_REPLICA_RELOAD_INTERVAL).setValue("3600"),
+        new ConfigurableProperty(Properties.PROPERTY_REPLICA_EQUALITY_INDEXES).setValue("sAMAccountName,mail,employeeID"),
+        new ConfigurableProperty(Properties.PROPERTY_REPLICA_PREFIX_INDEXES).setValue("sAMAccountName,displayName")
     );
 
     // Define the constants that are helpful
     public static final String SYNTAX_GENERALIZED_TIME = "1.3.6.1.4.1.1466.115.121.1.24";
 
     // Define the local LDAP structure caches
-    private Map<String,String> attributeSyntaxMap = new LinkedHashMap();
-    private Map<String,List<String>> structureMap = new LinkedHashMap();
+    private LdapSchemaCache<String> attributeSyntaxMap = buildSyntaxCache(0, 5000);
+    private LdapSchemaCache<List<String>> structureMap = buildStructureCache(0, 5000);
+    private volatile LdapSubschema subschema;
+    private String unindexedFilterPolicy;
+    private volatile LdapIndexMetadata indexMetadata;
+    // Define the cached list of structures, revalidated at this interval when
+    // no Schema Cache TTL is configured
+    private static final String STRUCTURE_LIST_KEY = "structures";
+    private static final long STRUCTURE_LIST_CHECK_INTERVAL = 300000L;
+    private LdapSchemaCache<StructureList> structureListCache = buildStructureListCache(0);
+    // Define the cache of compiled projections, keyed by structure and fields
+    private static final int MAXIMUM_PROJECTIONS = 256;
+    private final Map<String,LdapProjection> projectionCache =
+        new java.util.concurrent.ConcurrentHashMap<String,LdapProjection>();
+    // Define the cache of compiled query templates, keyed by template
+    private static final int MAXIMUM_TEMPLATES = 1000;
+    private final Map<String,LdapQueryTemplate> templateCache =
+        new java.util.concurrent.ConcurrentHashMap<String,LdapQueryTemplate>();
 
     // Define the bridge variables
     private Integer pageSize;
     private Integer maximumPages;
+    // Milliseconds the server may spend on a search (0 for no limit)
+    private int searchTimeLimit;
     private String searchBase;
+    // Runs the searches of multiple search bases concurrently
+    private java.util.concurrent.ExecutorService searchBaseExecutor;
+    private boolean serverSideSorting;
+    private String paginationType;
+    private volatile Set<String> supportedControls;
     private Hashtable<String,String> environment = new Hashtable();
+    private LdapServerGroup contextPool;
+    private LdapCountEngine countEngine;
+    private LdapTtlCache<String,Long> countCache;
+
+    // Define the cache of search and retrieve results (null when disabled)
+    private LdapResultCache resultCache;
+
+    // Define the pool of values shared by cached results and replicated entries
+    private LdapInternPool internPool = LdapInternPool.NONE;
+
+    // Define the cache of retrieves that matched no entry (null when disabled)
+    private LdapTtlCache<String,Boolean> negativeCache;
+
+    // Define the sharing of identical concurrent searches and retrieves (null
+    // when request coalescing is disabled)
+    private LdapRequestCoalescer<RecordList> searchCoalescer;
+    private LdapRequestCoalescer<Map<String,Object>> retrieveCoalescer;
+
+    // Define the in-memory mirror of the replicated structures (null when disabled)
+    private volatile LdapReplica replica;
 
     /**
      *
@@ -182,37 +556,69 @@ public class LdapAdapter implements BridgeAdapter {
      */
     @Override
     public Count count(BridgeRequest request) throws BridgeError {
-        // Build the context
-        LdapContext context = buildContext(environment);
-
-        // Build the query filter
-        String filter = buildFilter(request.getQuery(), request.getParameters(), request.getStructure());
+        // Build the query filter, rewritten to its optimized canonical form
+        String filter = LdapFilter.optimize(
+            buildFilter(request.getQuery(), request.getParameters(), request.getStructure()));
 
         // Build the search base
-        String fullSearchBase = buildSearchBase(request.getQuery(), request.getParameters(), this.searchBase);
+        List<String> searchBases = buildSearchBases(request.getQuery(), request.getParameters(), this.searchBase);
 
-        Long count = 0L;
         logger.trace("  Query with parameter values: " + filter);
 
-        // Try to execute the query
-        try {
-            // Build up the search controls
-            SearchControls controls = new SearchControls();
-            controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
-
-            NamingEnumeration results = context.search(fullSearchBase, filter, controls);
-            while(results.hasMore() && results.next() != null) {count++;}
+        // Apply the unindexed filter policy (warnings are logged, as there is
+        // no metadata to return them in)
+        checkFilter(filter);
+
+        // Count the replicated entries when the structure is replicated,
+        // stopping at the count limit like a directory count
+        List<LdapReplica.Entry> replicated = findReplicated(request.getStructure(), searchBases, filter,
+            Collections.<String>emptyList(), false);
+        if (replicated != null) {
+            long replicatedCount = replicated.size();
+            long countLimit = countEngine.getLimit();
+            if (countLimit > 0 && replicatedCount > countLimit) {
+                replicatedCount = countLimit;
+                logger.warn("The count for "+filter+" stopped at the "+Properties.PROPERTY_COUNT_LIMIT+
+                    " of "+replicatedCount+" entries.");
+            }
+            return new Count(replicatedCount);
         }
-        // If there was a problem retrieving the records
-        catch (NamingException e) {
-            throw new BridgeError("There was a problem searching LDAP: "+e.getMessage(),e);
+
+        // Return the cached count if the same count was recently executed, the
+        // canonical filter making equivalent queries share the cached count
+        String cacheKey = LdapTtlCache.searchKey(searchBases, filter);
+        if (countCache != null) {
+            Long cachedCount = countCache.get(cacheKey);
+            logger.debug("Count cache statistics: "+countCache);
+            if (cachedCount != null) {
+                return new Count(cachedCount);
+            }
         }
 
-        // Ensure the context is closed
-        try {
-            context.close();
-        } catch (NamingException e) {
-            throw new BridgeError("There was a problem closing the connection.", e);
+        // Try to execute the query on a pooled context, counting the entries
+        // without retrieving their attributes.  The count of several search
+        // bases is the sum of their counts, the bases being pruned so none is
+        // nested in another.
+        List<LdapCountEngine.Result> results = LdapSearchBases.run(searchBaseExecutor, searchBases,
+            base -> execute(context -> {
+                try {
+                    return countEngine.count(context, base, filter);
+                }
+                // If there was a problem retrieving the records
+                catch (java.io.IOException | NamingException e) {
+                    throw new BridgeError("There was a problem searching LDAP: "+e.getMessage(),e);
+                }
+            }));
+        long count = 0;
+        for (LdapCountEngine.Result result : results) {
+            count += result.getCount();
+            if (result.isLimitReached()) {
+                logger.warn("The count for "+filter+" stopped at the "+Properties.PROPERTY_COUNT_LIMIT+
+                    " of "+result.getCount()+" entries.");
+            }
+        }
+        if (countCache != null) {
+            countCache.put(cacheKey, count);
         }
 
         // Return the result data string
@@ -227,65 +633,73 @@ public class LdapAdapter implements BridgeAdapter {
      */
     @Override
     public Record retrieve(BridgeRequest request) throws BridgeError {
-        // Build the context
-        LdapContext context = buildContext(environment);
-
-        // Build the query filter
-        String filter = buildFilter(request.getQuery(), request.getParameters(), request.getStructure());
+        // Build the query filter, rewritten to its optimized canonical form
+        String filter = LdapFilter.optimize(
+            buildFilter(request.getQuery(), request.getParameters(), request.getStructure()));
 
         // Build the search base
-        String fullSearchBase = buildSearchBase(request.getQuery(), request.getParameters(), this.searchBase);
+        List<String> searchBases = buildSearchBases(request.getQuery(), request.getParameters(), this.searchBase);
         
         logger.trace("  Query with parameter values: " + filter);
-        // Initialize the result record
-        Map<String,Object> record = null;
-        // Try to execute the query
-        try {
-            // Initialize the list of fields
-            List<String> fields = request.getFields();
-            if (fields == null) {
-                fields = getStructureFields(request.getStructure());
-            }
-
-            // Build up the search controls, sorting will be based on the order
-            // that the attributes were requested
-            SearchControls controls = new SearchControls();
-            controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
-            controls.setReturningAttributes(fields.toArray(new String[fields.size()]));
 
-            // Retrieve the search result and throw an exception if there are multiple
-            SearchResult result = null;
-            try {
-                // Query for results
-                NamingEnumeration searchResults = context.search(fullSearchBase, filter, controls);
-                // If there is at least one search result
-                if (searchResults.hasMore()) {
-                    // Set the result
-                    result = (SearchResult)searchResults.next();
-                    // If there was more than one search result
-                    if (searchResults.hasMore()) {
-                        throw new BridgeError("Multiple results matched the "+
-                            "retrieve request (single result expected).");
-                    }
-                }
+        // Apply the unindexed filter policy (warnings are logged, as there is
+        // no metadata to return them in)
+        checkFilter(filter);
+
+        // Initialize the list of fields
+        final List<String> fields = request.getFields() == null
+            ? getStructureFields(request.getStructure())
+            : request.getFields();
+
+        // A query that is only a distinguished name addresses the entry
+        // directly, so the entry is read with a base object search instead of
+        // searching the subtree under it
+        final boolean entryAddressed = getQueryTemplate(request.getQuery()).isEntryAddressed(request.getParameters());
+
+        // Read the entry from the replica when the structure is replicated
+        List<LdapReplica.Entry> replicated = findReplicated(request.getStructure(), searchBases, filter,
+            fields, entryAddressed);
+        if (replicated != null) {
+            if (replicated.size() > 1) {
+                throw new BridgeError("Multiple results matched the "+
+                    "retrieve request (single result expected).");
             }
-            // If there was a problem retrieving the result
-            catch (NamingException e) {
-                throw new BridgeError("Unable to retrieve search results for: "+filter, e);
-            }
-            // If there was a search result found
-            if (result != null) {
-                record = buildRecordMap(fields, result);
+            return new Record(replicated.isEmpty() ? null : projectReplicated(
+                getProjection(null, request.getStructure(), fields), replicated.get(0)));
+        }
+
+        // Return no record when the same retrieve recently matched nothing.  A
+        // miss does not depend on the requested fields, so they are not part
+        // of the key.
+        String missKey = negativeCache == null ? null
+            : requestKey(request.getStructure(), null, searchBases, filter, String.valueOf(entryAddressed));
+        if (missKey != null) {
+            Boolean missed = negativeCache.get(missKey);
+            logger.debug("Negative cache statistics: "+negativeCache);
+            if (missed != null) {
+                return new Record(null);
             }
-        } catch (NamingException e) {
-            throw new BridgeError("There was a problem searching LDAP: "+e.getMessage(),e);
         }
 
-        // Ensure the context is closed
-        try {
-            context.close();
-        } catch (NamingException e) {
-            throw new BridgeError("There was a problem closing the connection.", e);
+        // Identical concurrent retrieves share a single LDAP operation
+        String requestKey = requestKey(request.getStructure(), request.getFields(), searchBases, filter,
+            String.valueOf(entryAddressed));
+        Map<String,Object> record;
+        if (resultCache == null) {
+            record = coalesce(retrieveCoalescer, requestKey,
+                () -> retrieveRecord(request, searchBases, filter, fields, entryAddressed));
+        } else {
+            // Cache the record as a single record list (misses are not cached)
+            RecordList cached = resultCache.get("retrieve\u0000"+requestKey, request.getStructure(), () -> {
+                Map<String,Object> values = coalesce(retrieveCoalescer, requestKey,
+                    () -> retrieveRecord(request, searchBases, filter, fields, entryAddressed));
+                return values == null ? null : new RecordList(request.getFields(),
+                    new ArrayList<Record>(Collections.singletonList(new Record(values))));
+            });
+            record = cached == null ? null : cached.getRecords().get(0).getRecord();
+        }
+        if (record == null && missKey != null) {
+            negativeCache.put(missKey, Boolean.TRUE);
         }
 
         // Return the result data string
@@ -294,104 +708,145 @@ public class LdapAdapter implements BridgeAdapter {
 
     @Override
     public RecordList search(BridgeRequest request) throws BridgeError {
-        // Build the context
-        InitialLdapContext context = buildContext(environment);
-
-        // Build the query filter
-        String filter = buildFilter(request.getQuery(), request.getParameters(), request.getStructure());
+        // Build the query filter, rewritten to its optimized canonical form
+        String filter = LdapFilter.optimize(
+            buildFilter(request.getQuery(), request.getParameters(), request.getStructure()));
 
         // Build the search base
-        String fullSearchBase = buildSearchBase(request.getQuery(), request.getParameters(), this.searchBase);
+        List<String> searchBases = buildSearchBases(request.getQuery(), request.getParameters(), this.searchBase);
 
         logger.trace("  Query with parameter values: " + filter);
 
-        // Initialize the records list
-        List<Record> records = new ArrayList<Record>();
+        // Initialize the list of fields
+        final List<String> fields = request.getFields() == null
+            ? getStructureFields(request.getStructure())
+            : request.getFields();
 
-        // Build the metadata
-        Map<String,String> metadata = new LinkedHashMap();
+        // Apply the unindexed filter policy before the search is sent
+        String filterWarning = checkFilter(filter);
 
-        // Try to execute the query
-        try {
-            // Initialize the list of fields
-            List<String> fields = request.getFields();
-            if (fields == null) {
-                fields = getStructureFields(request.getStructure());
+        // Fetch a single server page when token pagination is enabled
+        if (Properties.PAGINATION_TOKEN.equalsIgnoreCase(paginationType)) {
+            if (searchBases.size() > 1) {
+                throw new BridgeError("Token pagination does not support multiple search bases.");
             }
+            return addWarning(searchPage(request, searchBases.get(0), filter, fields), filterWarning);
+        }
+        boolean offsetPagination = Properties.PAGINATION_OFFSET.equalsIgnoreCase(paginationType);
 
-            // Build up the search controls
-            SearchControls controls = new SearchControls();
-            controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        // Search the replica when the structure is replicated
+        List<LdapReplica.Entry> replicated = findReplicated(request.getStructure(), searchBases, filter,
+            fields, false);
+        if (replicated != null) {
+            return addWarning(searchReplicated(request, fields, replicated, offsetPagination), filterWarning);
+        }
 
-            // Build an array of fields for the object
-            String[] fieldsArray = fields.toArray(new String[fields.size()]);
-            // Set the returning attributes
-            controls.setReturningAttributes(fieldsArray);
+        // Identical concurrent searches share a single LDAP operation
+        String requestKey = requestKey(request.getStructure(), request.getFields(), searchBases, filter,
+            offsetPagination ? request.getMetadata("offset")+"/"+request.getMetadata("pageSize") : "");
+        LdapResultCache.Loader loader = () -> coalesce(searchCoalescer, requestKey, () -> {
+            // Fetch a window of the sorted result when offset pagination is enabled
+            if (offsetPagination) {
+                return searchOffset(request, searchBases, filter, fields);
+            }
 
-            // Set up the page size
-            context.setRequestControls(new Control[]{new PagedResultsControl(pageSize, Control.CRITICAL) });
+            // Try to execute the query on pooled contexts
+            List<Record> records = new ArrayList<Record>();
+            Map<String,String> metadata = new LinkedHashMap();
+            searchAllBases(request, searchBases, filter, fields, records, metadata);
+            return new RecordList(request.getFields(), records, metadata);
+        });
+
+        // Return a copy of the cached result when the result cache is enabled
+        RecordList recordList = resultCache == null
+            ? loader.load()
+            : resultCache.get("search\u0000"+requestKey, request.getStructure(), loader);
+        if (resultCache != null) {
+            logger.debug("Result cache statistics: "+resultCache+", intern pool: "+internPool);
+        }
 
-            byte[] cookie = null;
-            int page = 0;
+        // Return the response value
+        return addWarning(recordList, filterWarning);
 
-            while (page == 0 || (page < maximumPages && cookie != null)) {
-                // Retrieve the search results
-                NamingEnumeration<SearchResult> searchResults;
-                try {
-                    searchResults = context.search(fullSearchBase, filter, controls);
-                } catch (NamingException e) {
-                    throw new BridgeError("Unable to retrieve search results for: "+filter, e);
-                }
+    }
 
-                // For each of the returned results
-                while (searchResults.hasMore()) {
-                    // Add the record to the list of records
-                    records.add(new Record(buildRecordMap(fields, searchResults.next())));
-                }
+    /**
+     * Streams the records matching the request to the handler page by page
+     * instead of collecting them into a RecordList, so the memory used does
+     * not grow with the number of pages.  Records are handed out in the
+     * server sort order when server side sorting is enabled, and in directory
+     * order otherwise.  Streaming supports a single search base, as the
+     * records of several bases could neither be merged in sort order nor
+     * deduplicated without holding them.
+     *
+     * @param request
+     * @param handler receives each record as soon as its page is read
+     * @return the search metadata
+     * @throws BridgeError
+     */
+    public Map<String,String> search(BridgeRequest request, LdapRecordHandler handler) throws BridgeError {
+        // Build the query filter, rewritten to its optimized canonical form
+        String filter = LdapFilter.optimize(
+            buildFilter(request.getQuery(), request.getParameters(), request.getStructure()));
 
-                // Examine the paged results control response
-                Control[] responseControls = context.getResponseControls();
+        // Build the search base
+        List<String> searchBases = buildSearchBases(request.getQuery(), request.getParameters(), this.searchBase);
 
-                if (responseControls != null) {
-                    for (int i = 0; i < responseControls.length; i++) {
-                        if (responseControls[i] instanceof PagedResultsResponseControl) {
-                            PagedResultsResponseControl prrc = (PagedResultsResponseControl) responseControls[i];
-                            cookie = prrc.getCookie();
-                        }
-                    }
-                }
+        logger.trace("  Query with parameter values: " + filter);
 
-                // Increment chunk
-                page++;
+        // Initialize the list of fields
+        final List<String> fields = request.getFields() == null
+            ? getStructureFields(request.getStructure())
+            : request.getFields();
 
-                // Re-activate paged results
-                context.setRequestControls(new Control[]{new PagedResultsControl(pageSize, cookie, Control.CRITICAL) });
+        if (searchBases.size() > 1) {
+            throw new BridgeError("Streaming searches do not support multiple search bases.");
+        }
+        String base = searchBases.get(0);
+
+        // Apply the unindexed filter policy before the search is sent
+        String filterWarning = checkFilter(filter);
+
+        // Hand out the sorted replicated entries when the structure is replicated
+        List<LdapReplica.Entry> replicated = findReplicated(request.getStructure(), searchBases, filter,
+            fields, false);
+        if (replicated != null) {
+            List<Record> records = replicatedRecords(request.getStructure(), fields, replicated);
+            long limit = Math.min(records.size(), (long)pageSize * maximumPages);
+            for (int i = 0; i < limit; i++) {
+                handler.handle(records.get(i));
             }
-
-            // Sort the list
-            Collections.sort(records, new RecordComparator(fields));
-
-            metadata.put("size", String.valueOf(records.size()));
-            if (records.size() == page*pageSize) {
+            Map<String,String> metadata = new LinkedHashMap();
+            metadata.put("size", String.valueOf(limit));
+            if (limit < records.size()) {
                 metadata.put("limitReached", "true");
             }
-
-        } catch (java.io.IOException e) {
-            throw new BridgeError("There was a problem searching LDAP: "+e.getMessage(),e);
-        } catch (NamingException e) {
-            throw new BridgeError("There was a problem searching LDAP: "+e.getMessage(),e);
-        }
-
-        // Ensure the context is closed
-        try {
-            context.close();
-        } catch (NamingException e) {
-            throw new BridgeError("There was a problem closing the connection.", e);
+            if (filterWarning != null) {
+                metadata.put("warning", filterWarning);
+            }
+            return metadata;
         }
 
-        // Return the response value
-        return new RecordList(request.getFields(), records, metadata);
+        // Try to execute the query on a pooled context
+        PageStatistics statistics = execute(context -> {
+            try {
+                return streamPages(context, base, filter,
+                    getProjection(context, request.getStructure(), fields), null, handler, serverSideSorting);
+            } catch (java.io.IOException e) {
+                throw new BridgeError("There was a problem searching LDAP: "+e.getMessage(),e);
+            }
+        }, false);
 
+        // Build the metadata
+        Map<String,String> metadata = new LinkedHashMap();
+        metadata.put("size", String.valueOf(statistics.size));
+        if (statistics.limitReached) {
+            metadata.put("limitReached", "true");
+        }
+        if (filterWarning != null) {
+            metadata.put("warning", filterWarning);
+        }
+        return metadata;
     }
 
     /***************************************************************************
@@ -413,49 +868,92 @@ public class LdapAdapter implements BridgeAdapter {
      * @throws BridgeError
      */
     private String getStructureFieldSyntax(String field) throws BridgeError {
-        // Initialize the result
-        String result = attributeSyntaxMap.get(field);
-
-        // If the cache does not yet have the syntax for the attribute
-        if (result == null) {
-            // Build the context
-            InitialLdapContext context = buildContext(environment);
+        // If the cache does not yet have the syntax for the attribute, look it
+        // up using a pooled context
+        return attributeSyntaxMap.get(field,
+            name -> loadStructureFieldSyntax(null, name));
+    }
 
-            // Attempt to retrieve the structure fields
-            try {
-                // Get the root schema
-                DirContext schema = context.getSchema("");
-                // Get the attributes that specify the definition of the specified attribute
-                Attributes definition = schema.getAttributes("AttributeDefinition/"+field);
-
-                // Retrieve the syntax type and super attribute
-                Attribute syntaxAttribute = definition.get("syntax");
-                Attribute supAttribute = definition.get("sup");
-                // While the attribute defition does not have a syntax and does
-                // have a SUPerior type, walk up the attribute definition chain
-                while (syntaxAttribute == null && supAttribute != null) {
-                    definition = schema.getAttributes("AttributeDefinition/"+supAttribute.get());
-                    syntaxAttribute = definition.get("syntax");
-                    supAttribute = definition.get("sup");
-                }
+    /**
+     * Returns the LDAP attribute type OID for the specified attribute name,
+     * using the provided context when the syntax is not yet cached.
+     *
+     * @param context
+     * @param field
+     * @return
+     * @throws BridgeError
+     */
+    private String getStructureFieldSyntax(LdapContext context, String field) throws BridgeError {
+        return attributeSyntaxMap.get(field, name -> loadStructureFieldSyntax(context, name));
+    }
 
-                // If a syntax attribute was found
-                if (syntaxAttribute != null) {
-                    result = syntaxAttribute.get().toString();
-                }
-                // If the syntax attribute was not found
-                else {
-                    throw new BridgeError("Unable to determine proper field syntax for field: "+field);
-                }
+    /**
+     * Loads the syntax OID of the attribute from the preloaded subschema when
+     * Schema Preload is enabled, and from the directory schema otherwise.
+     *
+     * @param context the context to read the schema with, or null to use a
+     *   pooled context
+     * @param field
+     * @return
+     * @throws BridgeError
+     */
+    private String loadStructureFieldSyntax(LdapContext context, String field) throws BridgeError {
+        LdapSubschema preloaded = subschema;
+        if (preloaded != null) {
+            String result = preloaded.getSyntax(field);
+            if (result == null) {
+                throw new BridgeError("Unable to determine proper field syntax for field: "+field);
             }
-            // Wrap any LDAP exceptions in a BridgeError
-            catch (NamingException e) {
-                throw new BridgeError("There was a problem retrieving the structure "+
-                    "field definition for the '"+field+"' attribute.", e);
+            return result;
+        }
+        return context == null
+            ? execute(pooledContext -> retrieveStructureFieldSyntax(pooledContext, field))
+            : retrieveStructureFieldSyntax(context, field);
+    }
+
+    /**
+     * Reads the syntax OID of the attribute from the directory schema,
+     * walking up the SUPerior attribute types until one defines a syntax.
+     *
+     * @param context
+     * @param field
+     * @return
+     * @throws BridgeError
+     */
+    private String retrieveStructureFieldSyntax(LdapContext context, String field) throws BridgeError {
+        // Initialize the result
+        String result;
+        // Attempt to retrieve the structure fields
+        try {
+            // Get the root schema
+            DirContext schema = context.getSchema("");
+            // Get the attributes that specify the definition of the specified attribute
+            Attributes definition = schema.getAttributes("AttributeDefinition/"+field);
+
+            // Retrieve the syntax type and super attribute
+            Attribute syntaxAttribute = definition.get("syntax");
+            Attribute supAttribute = definition.get("sup");
+            // While the attribute defition does not have a syntax and does
+            // have a SUPerior type, walk up the attribute definition chain
+            while (syntaxAttribute == null && supAttribute != null) {
+                definition = schema.getAttributes("AttributeDefinition/"+supAttribute.get());
+                syntaxAttribute = definition.get("syntax");
+                supAttribute = definition.get("sup");
             }
 
-            // Add the result to the cache
-            attributeSyntaxMap.put(field, result);
+            // If a syntax attribute was found
+            if (syntaxAttribute != null) {
+                result = syntaxAttribute.get().toString();
+            }
+            // If the syntax attribute was not found
+            else {
+                throw new BridgeError("Unable to determine proper field syntax for field: "+field);
+            }
+        }
+        // Wrap any LDAP exceptions in a BridgeError
+        catch (NamingException e) {
+            throw new BridgeError("There was a problem retrieving the structure "+
+                "field definition for the '"+field+"' attribute.", e);
         }
 
         // Return the result
@@ -468,77 +966,123 @@ public class LdapAdapter implements BridgeAdapter {
      * @throws BridgeError
      */
     public List<String> getStructureFields(String structure) throws BridgeError {
-        // Attempt to retrieve the result from the cached structure map
-        List<String> result = structureMap.get(structure);
-
-        // If the result was not cached in the results map
-        if (result == null) {
-            logger.info("Retrieving structure fields for: "+structure);
-
-            // Initialize a new result
-            result = new ArrayList();
-            // Build the context
-            InitialLdapContext context = buildContext(environment);
-            // Attempt to retrieve the structure fields
-            try {
-                // Get the root schema
-                DirContext schema = context.getSchema("");
-                // Initialize a set to temporarily store attributes
-                Set<String> attributes = new LinkedHashSet();
-                // Retrieve all of the attributes for the specified object class
-                String className = structure;
-                // Add each of the optional and required attributes for the object
-                // class, and each of its super classes, until we reach the root
-                // object class (top).
-                while(!"top".equals(className)) {
-                    logger.debug("  "+className);
-
-                    // Retrieve the definition for the attribute
-                    Attributes definition = schema.getAttributes("ClassDefinition/"+className);
-
-                    // Retrieve the optional attributes
-                    Attribute optionalAttributes = definition.get("may");
-                    // Add each of the optional attributes to the attributes
-                    if (optionalAttributes != null) {
-                        NamingEnumeration optionalAttributeNames = optionalAttributes.getAll();
-                        while(optionalAttributeNames.hasMore()) {
-                            String name = optionalAttributeNames.next().toString();
-                            logger.trace("    Optional: "+name);
-                            attributes.add(name);
-                        }
-                    }
+        // Attempt to retrieve the result from the cached structure map,
+        // retrieving the structure fields using a pooled context on a miss
+        return structureMap.get(structure, this::loadStructureFields);
+    }
 
-                    // Retrieve the required attributes
-                    Attribute requiredAttributes = definition.get("must");
-                    // Add each of the requried attributes to the attributes
-                    if (requiredAttributes != null) {
-                        NamingEnumeration requiredAttributeNames = requiredAttributes.getAll();
-                        while(requiredAttributeNames.hasMore()) {
-                            String name = requiredAttributeNames.next().toString();
-                            logger.trace("    Required: "+name);
-                            attributes.add(name);
-                        }
+    private List<String> loadStructureFields(String structure) throws BridgeError {
+        LdapSubschema preloaded = subschema;
+        if (preloaded != null) {
+            List<String> result = preloaded.getStructureFields(structure);
+            if (result == null) {
+                throw new BridgeError("There was a problem retrieving the structure "+
+                    "fields for the '"+structure+"' objectClass.");
+            }
+            return result;
+        }
+        logger.info("Retrieving structure fields for: "+structure);
+        return Collections.unmodifiableList(execute(context -> retrieveStructureFields(context, structure)));
+    }
+
+    /**
+     * Builds the cache of attribute syntaxes.  Expired syntaxes are reloaded
+     * in the background and compiled projections are dropped when one changed.
+     */
+    private LdapSchemaCache<String> buildSyntaxCache(long ttlMillis, int maxSize) {
+        return new LdapSchemaCache<String>("attribute syntax", ttlMillis, maxSize,
+            name -> loadStructureFieldSyntax(null, name),
+            () -> projectionCache.clear());
+    }
+
+    /**
+     * Builds the cache of structure fields.  Expired field lists are reloaded
+     * in the background.
+     */
+    private LdapSchemaCache<List<String>> buildStructureCache(long ttlMillis, int maxSize) {
+        return new LdapSchemaCache<List<String>>("structure", ttlMillis, maxSize,
+            this::loadStructureFields, null);
+    }
+
+    /**
+     * Builds the cache holding the list of structures.  The list is checked
+     * in the background once the interval elapsed and only read again when
+     * the subschema modifyTimestamp changed.
+     */
+    private LdapSchemaCache<StructureList> buildStructureListCache(long ttlMillis) {
+        return new LdapSchemaCache<StructureList>("structure list",
+            ttlMillis > 0 ? ttlMillis : STRUCTURE_LIST_CHECK_INTERVAL, 1,
+            this::loadStructureList, null);
+    }
+
+    /**
+     * Reads the optional and required attributes of the object class, and of
+     * each of its super classes, from the directory schema.
+     *
+     * @param context
+     * @param structure
+     * @return the sorted attribute names
+     * @throws BridgeError
+     */
+    private List<String> retrieveStructureFields(LdapContext context, String structure) throws BridgeError {
+        // Initialize a new result
+        List<String> result = new ArrayList();
+        // Attempt to retrieve the structure fields
+        try {
+            // Get the root schema
+            DirContext schema = context.getSchema("");
+            // Initialize a set to temporarily store attributes
+            Set<String> attributes = new LinkedHashSet();
+            // Retrieve all of the attributes for the specified object class
+            String className = structure;
+            // Add each of the optional and required attributes for the object
+            // class, and each of its super classes, until we reach the root
+            // object class (top).
+            while(!"top".equals(className)) {
+                logger.debug("  "+className);
+
+                // Retrieve the definition for the attribute
+                Attributes definition = schema.getAttributes("ClassDefinition/"+className);
+
+                // Retrieve the optional attributes
+                Attribute optionalAttributes = definition.get("may");
+                // Add each of the optional attributes to the attributes
+                if (optionalAttributes != null) {
+                    NamingEnumeration optionalAttributeNames = optionalAttributes.getAll();
+                    while(optionalAttributeNames.hasMore()) {
+                        String name = optionalAttributeNames.next().toString();
+                        logger.trace("    Optional: "+name);
+                        attributes.add(name);
                     }
+                }
 
-                    // Retrieve the parent class name
-                    className = definition.get("sup").get().toString();
+                // Retrieve the required attributes
+                Attribute requiredAttributes = definition.get("must");
+                // Add each of the requried attributes to the attributes
+                if (requiredAttributes != null) {
+                    NamingEnumeration requiredAttributeNames = requiredAttributes.getAll();
+                    while(requiredAttributeNames.hasMore()) {
+                        String name = requiredAttributeNames.next().toString();
+                        logger.trace("    Required: "+name);
+                        attributes.add(name);
+                    }
                 }
-                // Initialize a set to temporarily store attributes
-                result.addAll(attributes);
-            }
-            // Wrap any LDAP exceptions in a BridgeError
-            catch (NamingException e) {
-                throw new BridgeError("There was a problem retrieving the structure "+
-                    "fields for the '"+structure+"' objectClass.", e);
-            }
 
-            // Sort the results
-            Collections.sort(result);
-            
-            // Add the result to the strucureMapCache
-            structureMap.put(structure, result);
+                // Retrieve the parent class name
+                className = definition.get("sup").get().toString();
+            }
+            // Initialize a set to temporarily store attributes
+            result.addAll(attributes);
+        }
+        // Wrap any LDAP exceptions in a BridgeError
+        catch (NamingException e) {
+            throw new BridgeError("There was a problem retrieving the structure "+
+                "fields for the '"+structure+"' objectClass.", e);
         }
 
+        // Sort the results
+        Collections.sort(result);
+
         // Return the sorted result
         return result;
     }
@@ -549,22 +1093,78 @@ public class LdapAdapter implements BridgeAdapter {
      * @throws BridgeError
      */
     public List<String> getStructures() throws BridgeError {
+        // Return the cached structure list, which is revalidated in the
+        // background against the subschema modification time
+        return new ArrayList<String>(structureListCache.get(STRUCTURE_LIST_KEY, this::loadStructureList).names);
+    }
+
+    /**
+     * Loads the list of structures.  When the cache already holds a list read
+     * at the current subschema modifyTimestamp that list is returned as is;
+     * otherwise the structures are listed again and the other schema caches
+     * (and the preloaded subschema) are reloaded because the schema changed.
+     * When the modifyTimestamp can not be read the current list is kept, as
+     * a change can not be detected.
+     *
+     * @param key
+     * @return
+     * @throws BridgeError
+     */
+    private StructureList loadStructureList(String key) throws BridgeError {
+        StructureList current = structureListCache.getIfPresent(key);
+        return execute(context -> {
+            String modifyTimestamp;
+            try {
+                modifyTimestamp = LdapSubschema.readModifyTimestamp(context);
+            } catch (BridgeError | NamingException e) {
+                logger.debug("Unable to read the subschema modifyTimestamp: "+e.getMessage());
+                modifyTimestamp = null;
+            }
+            if (current != null && (modifyTimestamp == null || modifyTimestamp.equals(current.modifyTimestamp))) {
+                return current;
+            }
+
+            // Drop the definitions read before the schema changed
+            if (current != null) {
+                logger.info("The directory schema changed, reloading the schema definitions.");
+                if (subschema != null) {
+                    subschema = LdapSubschema.read(context);
+                }
+                attributeSyntaxMap.clear();
+                structureMap.clear();
+                projectionCache.clear();
+            }
+            return new StructureList(modifyTimestamp, retrieveStructures(context));
+        });
+    }
+
+    /**
+     * Lists the object classes of the preloaded subschema, or of the
+     * directory schema when the subschema is not preloaded.
+     *
+     * @param context
+     * @return the sorted object class names
+     * @throws BridgeError
+     */
+    private List<String> retrieveStructures(LdapContext context) throws BridgeError {
+        // Return the object classes of the preloaded subschema when available
+        LdapSubschema preloaded = subschema;
+        if (preloaded != null) {
+            return preloaded.getStructures();
+        }
+
         // Initialize the result
         List<String> result = new ArrayList();
 
-        // Build the context
-        InitialLdapContext context = buildContext(environment);
-
         // Attempt to retrieve the list of objectClass definitions
         try {
             // Get the root schema
             DirContext schema = context.getSchema("");
-            // Retrieve the enumeration of ClassDefinition bindings
-            NamingEnumeration<Binding> bindings = schema.listBindings("ClassDefinition");
+            // Retrieve the enumeration of ClassDefinition names
+            NamingEnumeration<NameClassPair> names = schema.list("ClassDefinition");
             // For each of the class definitions
-            while (bindings.hasMore()) {
-                Binding binding = bindings.next();
-                result.add(binding.getName());
+            while (names.hasMore()) {
+                result.add(names.next().getName());
             }
         }
         // Wrap any LDAP exceptions in a BridgeError
@@ -577,14 +1177,829 @@ public class LdapAdapter implements BridgeAdapter {
         Collections.sort(result);
 
         // Return the sorted results
-        return result;
+        return Collections.unmodifiableList(result);
     }
 
     /***************************************************************************
      * INTERNAL HELPER METHODS
      **************************************************************************/
 
-    private InitialLdapContext buildContext(Hashtable<String,String> environment) throws BridgeError {
+    /**
+     * Borrows a context from the connection pool, executes the operation with
+     * it and always returns the context to the pool.  Contexts whose operation
+     * failed with a CommunicationException are discarded instead of reused,
+     * and the operation is retried on the next server of the group.
+     *
+     * @param operation
+     * @return the value returned by the operation
+     * @throws BridgeError
+     */
+    private <T> T execute(LdapOperation<T> operation) throws BridgeError {
+        return execute(operation, true);
+    }
+
+    /**
+     * Executes the operation on a pooled context, retrying it on another
+     * server after a communication failure when failover is true.  Operations
+     * that hand out results as they read them must not be retried.
+     *
+     * @param operation
+     * @param failover
+     * @return the value returned by the operation
+     * @throws BridgeError
+     */
+    private <T> T execute(LdapOperation<T> operation, boolean failover) throws BridgeError {
+        if (contextPool == null) {
+            throw new BridgeError("The LDAP adapter has not been initialized.");
+        }
+        int attempts = failover ? contextPool.size() : 1;
+        for (int attempt = 1; ; attempt++) {
+            LdapContext context = contextPool.borrow();
+            try {
+                return operation.execute(context);
+            } catch (BridgeError e) {
+                if (!isCommunicationFailure(e)) {
+                    throw e;
+                }
+                contextPool.invalidate(context);
+                if (attempt >= attempts) {
+                    throw e;
+                }
+            } catch (CommunicationException e) {
+                contextPool.invalidate(context);
+                if (attempt >= attempts) {
+                    throw new BridgeError("Unable to connect to the specified LDAP server.", e);
+                }
+            } catch (NamingException e) {
+                throw new BridgeError("There was a problem communicating with LDAP: "+e.getMessage(), e);
+            } finally {
+                contextPool.release(context);
+            }
+            logger.warn("Lost the connection to the LDAP server, retrying the operation on another server.");
+        }
+    }
+
+    private static boolean isCommunicationFailure(Throwable error) {
+        return LdapServerGroup.isCommunicationFailure(error);
+    }
+
+    /**
+     * Runs the paged search, adding each converted entry to the records list
+     * and the result size to the metadata.  The records are sorted by the
+     * requested fields.
+     */
+    private void searchPages(LdapContext context, String fullSearchBase, String filter,
+        LdapProjection projection, Map<Record,String> names, List<Record> records, Map<String,String> metadata
+    ) throws BridgeError, NamingException, java.io.IOException {
+        PageStatistics statistics = streamPages(context, fullSearchBase, filter, projection, names, records::add, true);
+
+        metadata.put("size", String.valueOf(records.size()));
+        if (statistics.limitReached) {
+            metadata.put("limitReached", "true");
+        }
+    }
+
+    /**
+     * Searches every search base for the entry of a retrieve, returning its
+     * converted attributes or null when no entry matched.
+     */
+    private Map<String,Object> retrieveRecord(BridgeRequest request, List<String> searchBases, String filter,
+        List<String> fields, boolean entryAddressed
+    ) throws BridgeError {
+        // Try to execute the query on a pooled context, searching every
+        // search base for the entry
+        List<Map<String,Object>> results = LdapSearchBases.run(searchBaseExecutor, searchBases,
+            base -> execute(context -> {
+                // Initialize the result record
+                Map<String,Object> result = null;
+
+                // Build up the search controls from the projection of the fields
+                LdapProjection projection = getProjection(context, request.getStructure(), fields);
+                SearchControls controls = buildSearchControls(projection.getReturningAttributes());
+                if (entryAddressed) {
+                    controls.setSearchScope(SearchControls.OBJECT_SCOPE);
+                } else {
+                    // Two entries are enough to know the retrieve is ambiguous
+                    controls.setCountLimit(2);
+                }
+
+                // Retrieve the search result and throw an exception if there are multiple
+                SearchResult searchResult = null;
+                try {
+                    // Query for results
+                    NamingEnumeration searchResults = context.search(base, filter, controls);
+                    // If there is at least one search result
+                    if (searchResults.hasMore()) {
+                        // Set the result
+                        searchResult = (SearchResult)searchResults.next();
+                        // If there was more than one search result
+                        if (searchResults.hasMore()) {
+                            throw new BridgeError("Multiple results matched the "+
+                                "retrieve request (single result expected).");
+                        }
+                    }
+                }
+                // An addressed entry that does not exist is not found
+                catch (NameNotFoundException e) {
+                    if (!entryAddressed) {
+                        throw new BridgeError("Unable to retrieve search results for: "+filter, e);
+                    }
+                }
+                // If there was a problem retrieving the result
+                catch (NamingException e) {
+                    throw new BridgeError("Unable to retrieve search results for: "+filter, e);
+                }
+                // If there was a search result found
+                if (searchResult != null) {
+                    try {
+                        result = projection.project(searchResult);
+                    } catch (NamingException e) {
+                        throw new BridgeError("There was a problem searching LDAP: "+e.getMessage(),e);
+                    }
+                }
+                return result;
+            }));
+        Map<String,Object> record = null;
+        for (Map<String,Object> result : results) {
+            if (result != null && record != null) {
+                throw new BridgeError("Multiple results matched the "+
+                    "retrieve request (single result expected).");
+            } else if (result != null) {
+                record = result;
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Runs the paged search of every search base, adding the sorted records
+     * to the records list and the result size to the metadata.  A single base
+     * is searched on the calling thread.  Several bases are searched
+     * concurrently, each on its own pooled context, and their sorted records
+     * are merged, entries found under more than one base (through referrals)
+     * being returned once.
+     */
+    private void searchAllBases(BridgeRequest request, List<String> searchBases, String filter,
+        List<String> fields, List<Record> records, Map<String,String> metadata
+    ) throws BridgeError {
+        if (searchBases.size() == 1) {
+            execute(context -> {
+                // Start over when the search is retried on another server
+                records.clear();
+                try {
+                    searchPages(context, searchBases.get(0), filter,
+                        getProjection(context, request.getStructure(), fields), null, records, metadata);
+                } catch (java.io.IOException e) {
+                    throw new BridgeError("There was a problem searching LDAP: "+e.getMessage(),e);
+                }
+                return null;
+            });
+            return;
+        }
+
+        Map<Record,String> names = Collections.synchronizedMap(new IdentityHashMap<Record,String>());
+        List<Map<String,String>> baseMetadata = Collections.synchronizedList(new ArrayList<Map<String,String>>());
+        List<List<Record>> results = LdapSearchBases.run(searchBaseExecutor, searchBases, base -> {
+            List<Record> baseRecords = new ArrayList<Record>();
+            Map<String,String> metadataOfBase = new LinkedHashMap();
+            execute(context -> {
+                baseRecords.clear();
+                try {
+                    searchPages(context, base, filter,
+                        getProjection(context, request.getStructure(), fields), names, baseRecords, metadataOfBase);
+                } catch (java.io.IOException e) {
+                    throw new BridgeError("There was a problem searching LDAP: "+e.getMessage(),e);
+                }
+                return null;
+            });
+            baseMetadata.add(metadataOfBase);
+            return baseRecords;
+        });
+
+        records.clear();
+        records.addAll(LdapSearchBases.merge(results, names, new RecordComparator(fields)));
+        metadata.put("size", String.valueOf(records.size()));
+        for (Map<String,String> metadataOfBase : baseMetadata) {
+            if (metadataOfBase.containsKey("limitReached")) {
+                metadata.put("limitReached", "true");
+            }
+        }
+    }
+
+    /**
+     * Runs the paged search, converting the entries of each page and handing
+     * them to the handler before the next page is requested, so no more than
+     * a page of entries is held at once.
+     *
+     * When server side sorting is enabled each page is held until its sort
+     * response confirms the server order.  If the server did not sort and
+     * sortLocally is true, the remaining records are collected and sorted
+     * before they are handed out; otherwise they are handed out in directory
+     * order.  When names is not null the entry name (DN) of each record is
+     * put in it before the record is handed out.
+     */
+    private PageStatistics streamPages(LdapContext context, String fullSearchBase, String filter,
+        LdapProjection projection, Map<Record,String> names, LdapRecordHandler handler, boolean sortLocally
+    ) throws BridgeError, NamingException, java.io.IOException {
+        // Use the prebuilt array of fields for the object
+        String[] fieldsArray = projection.getReturningAttributes();
+        // Build up the search controls, asking the server to stop at the most
+        // entries the search returns (Maximum Pages of Page Size entries)
+        SearchControls controls = buildSearchControls(fieldsArray);
+        long limit = (long)pageSize * maximumPages;
+        controls.setCountLimit(limit);
+
+        // Ask the server to sort the entries by the requested fields when
+        // server side sorting is enabled.  The control is not critical, so a
+        // server that can not sort returns the entries unsorted.
+        SortControl sortControl = serverSideSorting ? new SortControl(fieldsArray, Control.NONCRITICAL) : null;
+        boolean serverSorted = serverSideSorting;
+
+        // Records held until the sort order is known (one page), or until the
+        // end of the search when they have to be sorted locally
+        List<Record> pending = new ArrayList<Record>();
+        PageStatistics statistics = new PageStatistics();
+
+        // Set up the page size
+        context.setRequestControls(buildPageControls(pageSize, null, sortControl));
+
+        byte[] cookie = null;
+        int page = 0;
+
+        while (page == 0 || (page < maximumPages && cookie != null)) {
+            // Retrieve the search results
+            NamingEnumeration<SearchResult> searchResults;
+            try {
+                searchResults = context.search(fullSearchBase, filter, controls);
+            } catch (NamingException e) {
+                throw new BridgeError("Unable to retrieve search results for: "+filter, e);
+            }
+
+            // For each of the returned results
+            boolean holdPage = serverSorted || sortLocally;
+            try {
+                while (searchResults.hasMore()) {
+                    SearchResult searchResult = searchResults.next();
+                    Record record = new Record(projection.project(searchResult));
+                    if (names != null) {
+                        names.put(record, searchResult.getNameInNamespace());
+                    }
+                    statistics.size++;
+                    if (holdPage) {
+                        pending.add(record);
+                    } else {
+                        handler.handle(record);
+                    }
+                }
+            } catch (SizeLimitExceededException e) {
+                // The server stopped at the count limit and ended the search
+                statistics.limitReached = true;
+            } catch (TimeLimitExceededException e) {
+                // The server stopped at the time limit and ended the search
+                logger.warn("The search for "+filter+" stopped at the "+Properties.PROPERTY_SEARCH_TIME_LIMIT+
+                    " after "+statistics.size+" entries.");
+                statistics.limitReached = true;
+            } finally {
+                searchResults.close();
+            }
+
+            // Examine the paged results control response
+            Control[] responseControls = context.getResponseControls();
+            cookie = statistics.limitReached ? null : LdapCountEngine.getCookie(responseControls);
+
+            // Fall back to sorting in memory if the server did not sort the page
+            if (serverSorted && !isServerSorted(responseControls)) {
+                logger.debug("The server did not accept the sort control, sorting the records locally.");
+                serverSorted = false;
+            }
+            // Hand out the page once it is known to be in order
+            if (serverSorted || !sortLocally) {
+                for (Record record : pending) {
+                    handler.handle(record);
+                }
+                pending.clear();
+            }
+
+            // Increment chunk
+            page++;
+
+            // Re-activate paged results
+            if (cookie != null) {
+                context.setRequestControls(buildPageControls(pageSize, cookie, sortControl));
+            }
+        }
+
+        // Release the server side state of a paged search stopped before its
+        // last page (when the server does not enforce the count limit)
+        if (cookie != null) {
+            statistics.limitReached = true;
+            try {
+                LdapCountEngine.abandon(context, fullSearchBase, filter, controls, cookie);
+            } catch (NamingException e) {
+                logger.debug("Unable to abandon the paged search: "+e.getMessage());
+            }
+        }
+
+        // Sort and hand out the records the server did not sort
+        if (!pending.isEmpty()) {
+            Collections.sort(pending, new RecordComparator(projection.getFields()));
+            for (Record record : pending) {
+                handler.handle(record);
+            }
+        }
+
+        statistics.pages = page;
+        statistics.serverSorted = serverSorted;
+        return statistics;
+    }
+
+    /**
+     * Fetches a single page of results for token based pagination.
+     *
+     * The paged results cookie is returned as the nextPageToken metadata value
+     * and the context is parked so the next request resumes the paged search
+     * on the same connection.  A token whose connection expired is retried on
+     * a new connection, which directories such as Active Directory accept.
+     */
+    private RecordList searchPage(BridgeRequest request, String fullSearchBase, String filter,
+        List<String> fields
+    ) throws BridgeError {
+        // Determine the page size, allowing the request to ask for a smaller page
+        int size = pageSize;
+        String requestedSize = request.getMetadata("pageSize");
+        if (StringUtils.isNotBlank(requestedSize)) {
+            try {
+                size = Math.max(1, Math.min(pageSize * maximumPages, Integer.parseInt(requestedSize.trim())));
+            } catch (NumberFormatException e) {
+                throw new BridgeError("Invalid pageSize metadata value: "+requestedSize, e);
+            }
+        }
+
+        // Parse the token of the previous page and make sure it belongs to this search
+        String fingerprint = LdapPageToken.fingerprint(fullSearchBase, filter, fields);
+        String pageToken = request.getMetadata("pageToken");
+        LdapPageToken token = StringUtils.isBlank(pageToken) ? null : LdapPageToken.parse(pageToken);
+        if (token != null && !fingerprint.equals(token.getFingerprint())) {
+            throw new BridgeError("The page token does not belong to this search.");
+        }
+
+        // Resume the connection the paged search is bound to, or lease a new one
+        LdapContext context = token == null ? null : contextPool.resume(token.getParkId());
+        if (context == null) {
+            context = contextPool.borrow();
+        }
+
+        List<Record> records = new ArrayList<Record>();
+        Map<String,String> metadata = new LinkedHashMap();
+        boolean parked = false;
+        try {
+            LdapProjection projection = getProjection(context, request.getStructure(), fields);
+            String[] fieldsArray = projection.getReturningAttributes();
+            SearchControls controls = buildSearchControls(fieldsArray);
+            SortControl sortControl = serverSideSorting ? new SortControl(fieldsArray, Control.NONCRITICAL) : null;
+
+            // Request the page
+            context.setRequestControls(buildPageControls(size, token == null ? null : token.getCookie(), sortControl));
+            NamingEnumeration<SearchResult> searchResults;
+            try {
+                searchResults = context.search(fullSearchBase, filter, controls);
+            } catch (NamingException e) {
+                throw new BridgeError("Unable to retrieve search results for: "+filter, e);
+            }
+            while (searchResults.hasMore()) {
+                records.add(new Record(projection.project(searchResults.next())));
+            }
+
+            // Sort the page unless the server already returned it in order
+            Control[] responseControls = context.getResponseControls();
+            if (sortControl == null || !isServerSorted(responseControls)) {
+                Collections.sort(records, new RecordComparator(fields));
+            }
+
+            metadata.put("pageSize", String.valueOf(size));
+            metadata.put("size", String.valueOf(records.size()));
+
+            // Hand out a token for the next page while the server has more
+            byte[] cookie = LdapCountEngine.getCookie(responseControls);
+            if (cookie != null) {
+                String parkId = contextPool.park(context);
+                parked = parkId != null;
+                metadata.put("nextPageToken", new LdapPageToken(parkId, fingerprint, cookie).toString());
+            }
+        } catch (BridgeError e) {
+            if (isCommunicationFailure(e)) {
+                contextPool.invalidate(context);
+            }
+            throw e;
+        } catch (CommunicationException e) {
+            contextPool.invalidate(context);
+            throw new BridgeError("Unable to connect to the specified LDAP server.", e);
+        } catch (java.io.IOException | NamingException e) {
+            throw new BridgeError("There was a problem searching LDAP: "+e.getMessage(),e);
+        } finally {
+            if (!parked) {
+                contextPool.release(context);
+            }
+        }
+
+        // Return the response value
+        return new RecordList(request.getFields(), records, metadata);
+    }
+
+    /**
+     * Fetches a window of the sorted result for offset based pagination.
+     *
+     * When the directory supports the Virtual List View control the server
+     * sorts the entries by every requested field and returns only the entries
+     * of the window, along with the total result size.  Otherwise (including
+     * servers that only sort on a single key) the regular paged search is run
+     * and the window is taken from its records, sorted by the same fields.
+     * Searches of several search bases always take the window from the
+     * merged records of the paged searches.  The count is omitted when the
+     * paged search reached the Maximum Pages limit, as it would only be a
+     * lower bound.
+     */
+    private RecordList searchOffset(BridgeRequest request, List<String> searchBases, String filter,
+        List<String> fields
+    ) throws BridgeError {
+        // Read the window from the request metadata
+        int[] requestedWindow = readWindow(request);
+        int offset = requestedWindow[0];
+        int size = requestedWindow[1];
+
+        List<Record> records = new ArrayList<Record>();
+        Map<String,String> metadata = new LinkedHashMap();
+
+        // Try the virtual list view when the server advertises it
+        if (searchBases.size() == 1 && isControlSupported(LdapVlvControl.OID)) {
+            String fullSearchBase = searchBases.get(0);
+            Long contentCount = execute(context -> {
+                records.clear();
+                try {
+                    LdapProjection projection = getProjection(context, request.getStructure(), fields);
+                    String[] fieldsArray = projection.getReturningAttributes();
+                    SearchControls controls = buildSearchControls(fieldsArray);
+                    context.setRequestControls(new Control[]{
+                        new SortControl(fieldsArray, Control.CRITICAL),
+                        new LdapVlvControl(offset + 1, size, 0, Control.CRITICAL)
+                    });
+                    NamingEnumeration<SearchResult> searchResults = context.search(fullSearchBase, filter, controls);
+                    while (searchResults.hasMore()) {
+                        records.add(new Record(projection.project(searchResults.next())));
+                    }
+                    LdapVlvControl.Response response = LdapVlvControl.getResponse(context.getResponseControls());
+                    if (response != null && response.isSuccess()) {
+                        return response.getContentCount();
+                    }
+                    logger.debug("The virtual list view was not performed"+(response == null ? "" :
+                        " (result code "+response.getResultCode()+")")+", falling back to a paged search.");
+                } catch (CommunicationException e) {
+                    throw e;
+                } catch (java.io.IOException | NamingException e) {
+                    logger.debug("The virtual list view search failed, falling back to a paged search: "+e.getMessage());
+                }
+                records.clear();
+                return null;
+            });
+            if (contentCount != null) {
+                metadata.put("offset", String.valueOf(offset));
+                metadata.put("pageSize", String.valueOf(size));
+                metadata.put("size", String.valueOf(records.size()));
+                metadata.put("count", String.valueOf(contentCount));
+                return new RecordList(request.getFields(), records, metadata);
+            }
+        }
+
+        // Fall back to the paged search and take the window from its records
+        searchAllBases(request, searchBases, filter, fields, records, metadata);
+        int total = records.size();
+        List<Record> window = new ArrayList<Record>(records.subList(Math.min(offset, total),
+            (int)Math.min((long)offset + size, total)));
+        metadata.put("offset", String.valueOf(offset));
+        metadata.put("pageSize", String.valueOf(size));
+        metadata.put("size", String.valueOf(window.size()));
+        if (!metadata.containsKey("limitReached")) {
+            metadata.put("count", String.valueOf(total));
+        }
+        return new RecordList(request.getFields(), window, metadata);
+    }
+
+    /**
+     * Reads the offset and page size of the window requested by offset
+     * pagination from the request metadata.  The offset is capped so the one
+     * based target position of the virtual list view still fits in an int.
+     *
+     * @return the offset and the page size
+     */
+    private int[] readWindow(BridgeRequest request) throws BridgeError {
+        try {
+            long offset = Long.parseLong(StringUtils.defaultIfBlank(request.getMetadata("offset"), "0").trim());
+            return new int[]{
+                (int)Math.max(0, Math.min(offset, Integer.MAX_VALUE - 1)),
+                Math.max(1, Integer.parseInt(StringUtils.defaultIfBlank(
+                    request.getMetadata("pageSize"), String.valueOf(pageSize)).trim()))
+            };
+        } catch (NumberFormatException e) {
+            throw new BridgeError("Invalid offset or pageSize metadata value: "+e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the replicated entries matching the request, or null when the
+     * replica is disabled or can not answer it (the directory is searched
+     * instead).
+     */
+    private List<LdapReplica.Entry> findReplicated(String structure, List<String> searchBases, String filter,
+        List<String> fields, boolean baseObject
+    ) {
+        LdapReplica current = replica;
+        if (current == null) {
+            return null;
+        }
+        LdapFilter parsed;
+        try {
+            parsed = LdapFilter.parse(filter);
+        } catch (BridgeError e) {
+            return null;
+        }
+        List<LdapReplica.Entry> entries = current.find(structure, searchBases, baseObject, parsed, fields);
+        logger.debug("Replica statistics: "+current);
+        return entries;
+    }
+
+    /**
+     * Converts the replicated entries into records sorted by the fields.
+     */
+    private List<Record> replicatedRecords(String structure, List<String> fields, List<LdapReplica.Entry> entries)
+        throws BridgeError
+    {
+        LdapProjection projection = getProjection(null, structure, fields);
+        List<Record> records = new ArrayList<Record>(entries.size());
+        for (LdapReplica.Entry entry : entries) {
+            records.add(new Record(projectReplicated(projection, entry)));
+        }
+        Collections.sort(records, new RecordComparator(fields));
+        return records;
+    }
+
+    private static Map<String,Object> projectReplicated(LdapProjection projection, LdapReplica.Entry entry)
+        throws BridgeError
+    {
+        try {
+            return projection.project(entry.toAttributes());
+        } catch (NamingException e) {
+            throw new BridgeError("There was a problem converting the replicated entry "+
+                entry.getName()+": "+e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Builds the result of a search from the replicated entries, limited to
+     * Maximum Pages of Page Size entries like a directory search, or windowed
+     * when offset pagination is enabled.
+     */
+    private RecordList searchReplicated(BridgeRequest request, List<String> fields,
+        List<LdapReplica.Entry> entries, boolean offsetPagination
+    ) throws BridgeError {
+        List<Record> records = replicatedRecords(request.getStructure(), fields, entries);
+        Map<String,String> metadata = new LinkedHashMap();
+        int total = records.size();
+        if (offsetPagination) {
+            int[] window = readWindow(request);
+            List<Record> page = new ArrayList<Record>(records.subList(Math.min(window[0], total),
+                (int)Math.min((long)window[0] + window[1], total)));
+            metadata.put("offset", String.valueOf(window[0]));
+            metadata.put("pageSize", String.valueOf(window[1]));
+            metadata.put("size", String.valueOf(page.size()));
+            metadata.put("count", String.valueOf(total));
+            return new RecordList(request.getFields(), page, metadata);
+        }
+        long limit = (long)pageSize * maximumPages;
+        if (total > limit) {
+            records = new ArrayList<Record>(records.subList(0, (int)limit));
+        }
+        metadata.put("size", String.valueOf(records.size()));
+        if (total > limit) {
+            metadata.put("limitReached", "true");
+        }
+        return new RecordList(request.getFields(), records, metadata);
+    }
+
+    /**
+     * Runs a paged subtree search for the replica on a pooled context,
+     * handing every entry to the handler.  The search is retried on another
+     * server after a communication failure.
+     */
+    private void replicateEntries(String base, String filter, String[] attributes,
+        LdapReplica.EntryHandler handler
+    ) throws BridgeError {
+        execute(context -> {
+            SearchControls controls = new SearchControls();
+            controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+            controls.setReturningAttributes(attributes);
+            try {
+                byte[] cookie = null;
+                context.setRequestControls(buildPageControls(LdapCountEngine.DEFAULT_PAGE_SIZE, null, null));
+                do {
+                    NamingEnumeration<SearchResult> results = context.search(base, filter, controls);
+                    try {
+                        while (results.hasMore()) {
+                            SearchResult result = results.next();
+                            handler.handle(result.getNameInNamespace(), result.getAttributes());
+                        }
+                    } finally {
+                        results.close();
+                    }
+                    cookie = LdapCountEngine.getCookie(context.getResponseControls());
+                    if (cookie != null) {
+                        context.setRequestControls(buildPageControls(LdapCountEngine.DEFAULT_PAGE_SIZE, cookie, null));
+                    }
+                } while (cookie != null);
+            } catch (java.io.IOException e) {
+                throw new BridgeError("There was a problem replicating LDAP: "+e.getMessage(), e);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Returns true if the root DSE of the directory lists the control OID in
+     * its supportedControl attribute.  The list is read once and cached.
+     */
+    private boolean isControlSupported(String oid) throws BridgeError {
+        Set<String> controls = supportedControls;
+        if (controls == null) {
+            controls = execute(context -> {
+                Set<String> result = new HashSet<String>();
+                Attribute attribute = context.getAttributes("", new String[]{"supportedControl"}).get("supportedControl");
+                if (attribute != null) {
+                    NamingEnumeration values = attribute.getAll();
+                    while (values.hasMore()) {
+                        result.add(values.next().toString());
+                    }
+                }
+                return result;
+            });
+            supportedControls = controls;
+        }
+        return controls.contains(oid);
+    }
+
+    /**
+     * Applies the Unindexed Filter Policy to the filter.  Filters the
+     * directory can not resolve with an index are logged (Log and Warn) or
+     * rejected (Reject).
+     *
+     * @param filter the canonical filter
+     * @return the warning to return in the metadata (Warn), or null
+     * @throws BridgeError if the filter is rejected
+     */
+    private String checkFilter(String filter) throws BridgeError {
+        LdapIndexMetadata metadata = indexMetadata;
+        if (metadata == null || Properties.FILTER_POLICY_IGNORE.equalsIgnoreCase(unindexedFilterPolicy)) {
+            return null;
+        }
+        LdapIndexMetadata.Classification classification;
+        try {
+            classification = metadata.classify(LdapFilter.parse(filter));
+        } catch (BridgeError e) {
+            // Leave filters that can not be parsed to the directory
+            return null;
+        }
+        if (classification != LdapIndexMetadata.Classification.UNINDEXED) {
+            return null;
+        }
+
+        String message = "The filter "+filter+" does not use an indexed attribute, "+
+            "the directory has to scan every entry in the search base.";
+        if (Properties.FILTER_POLICY_REJECT.equalsIgnoreCase(unindexedFilterPolicy)) {
+            throw new BridgeError(message+" The search was rejected by the "+
+                Properties.PROPERTY_UNINDEXED_FILTER_POLICY+".");
+        }
+        logger.warn(message);
+        return Properties.FILTER_POLICY_WARN.equalsIgnoreCase(unindexedFilterPolicy) ? message : null;
+    }
+
+    /**
+     * Executes the operation, sharing it with identical concurrent requests
+     * when request coalescing is enabled.
+     */
+    private static <V> V coalesce(LdapRequestCoalescer<V> coalescer, String requestKey,
+        LdapRequestCoalescer.Operation<V> operation
+    ) throws BridgeError {
+        return coalescer == null ? operation.execute() : coalescer.execute(requestKey, operation);
+    }
+
+    /**
+     * Builds the normalized key of a request from its structure, requested
+     * fields, search bases, canonical filter and any other option that
+     * changes the result.
+     */
+    static String requestKey(String structure, List<String> fields, List<String> searchBases,
+        String filter, String options
+    ) {
+        StringBuilder key = new StringBuilder();
+        key.append(structure == null ? "" : structure.toLowerCase(Locale.ROOT)).append('\u0000');
+        key.append(fields == null ? "*" : String.join(",", fields)).append('\u0000');
+        for (String base : searchBases) {
+            key.append(LdapTtlCache.normalizeDn(base)).append(LdapSearchBases.SEPARATOR);
+        }
+        key.append('\u0000').append(filter).append('\u0000').append(options);
+        return key.toString();
+    }
+
+    /**
+     * Returns a copy of the record values that can be modified without
+     * affecting the original, copying multiple value lists as well.
+     */
+    static Map<String,Object> copyRecord(Map<String,Object> values) {
+        if (values == null) {
+            return null;
+        }
+        Map<String,Object> copy = new LinkedHashMap<String,Object>(values);
+        for (Map.Entry<String,Object> entry : copy.entrySet()) {
+            if (entry.getValue() instanceof List) {
+                entry.setValue(new ArrayList<Object>((List<?>)entry.getValue()));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Returns a copy of the record list, its records and its metadata.
+     */
+    static RecordList copyRecordList(RecordList recordList) {
+        List<Record> records = new ArrayList<Record>(recordList.getRecords().size());
+        for (Record record : recordList.getRecords()) {
+            records.add(new Record(copyRecord(record.getRecord())));
+        }
+        return new RecordList(recordList.getFields() == null ? null : new ArrayList<String>(recordList.getFields()),
+            records, recordList.getMetadata() == null ? null : new LinkedHashMap<String,String>(recordList.getMetadata()));
+    }
+
+    private static RecordList addWarning(RecordList recordList, String warning) {
+        if (warning != null) {
+            recordList.getMetadata().put("warning", warning);
+        }
+        return recordList;
+    }
+
+    /**
+     * Builds the subtree search controls returning the specified attributes.
+     */
+    private SearchControls buildSearchControls(String[] fieldsArray) {
+        SearchControls controls = new SearchControls();
+        controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        // Ask the server to give up on searches running longer than the time limit
+        controls.setTimeLimit(searchTimeLimit);
+        // Set the returning attributes
+        controls.setReturningAttributes(fieldsArray);
+        return controls;
+    }
+
+    /**
+     * Builds the request controls for a page of a paged search, including the
+     * sort control when one is provided.
+     */
+    private static Control[] buildPageControls(int size, byte[] cookie, SortControl sortControl) throws java.io.IOException {
+        PagedResultsControl pagedControl = new PagedResultsControl(size, cookie, Control.CRITICAL);
+        return sortControl == null
+            ? new Control[]{pagedControl}
+            : new Control[]{sortControl, pagedControl};
+    }
+
+    /**
+     * Returns true if the response includes a successful sort response
+     * control (RFC 2891).
+     */
+    private static boolean isServerSorted(Control[] responseControls) {
+        if (responseControls != null) {
+            for (Control control : responseControls) {
+                if (control instanceof SortResponseControl) {
+                    return ((SortResponseControl)control).isSorted();
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds the bounded pool of daemon threads the searches of multiple
+     * search bases run on.  Idle threads are stopped.
+     */
+    private static java.util.concurrent.ExecutorService buildSearchBaseExecutor(int concurrency) {
+        java.util.concurrent.ThreadPoolExecutor executor = new java.util.concurrent.ThreadPoolExecutor(
+            concurrency, concurrency, 60L, java.util.concurrent.TimeUnit.SECONDS,
+            new java.util.concurrent.LinkedBlockingQueue<Runnable>(), runnable -> {
+                Thread thread = new Thread(runnable, "ldap-search-base");
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private InitialLdapContext buildContext(Hashtable<String,String> environment) throws BridgeError {
         // Declare the context
         InitialLdapContext context;
         // Try to build the context
@@ -608,11 +2023,8 @@ public class LdapAdapter implements BridgeAdapter {
         // (samaccountname=<%=parameter["samaccountname"]%>) with "samaccountname" = "*" becomes (samaccountname=*)
         // OU=SomeOU(samaccountname=<%=parameter["samaccountname"]%>) with "samaccountname" = "*" becomes OU=SomeOU(samaccountname=*)
         // OU=<%=parameter["OU"]%>(samaccountname=<%=parameter["samaccountname"]%>) with "OU" = "SomeOU" and "samaccountname" = "*" becomes OU=SomeOU(samaccountname=*)
-        LdapQualificationParser parser = new LdapQualificationParser();
-        String parsedFilter = parser.parse(query, parameters);
-
-        // Replace any "queries" () within the query with an empty string, leaving us with only strings outside the queries
-        String searchBaseAppend = parsedFilter.replaceAll("\\(.*\\)", "");
+        // The "queries" () within the query are removed, leaving us with only strings outside the queries
+        String searchBaseAppend = getQueryTemplate(query).buildBaseAddition(parameters);
 
         // If anything is leftover, we're making the assumption it is an addition to the search base defined by the bridge
         if (StringUtils.isNotBlank(searchBaseAppend)) {
@@ -622,23 +2034,33 @@ public class LdapAdapter implements BridgeAdapter {
         }
     }
 
+    /**
+     * Builds the search base of each base of the bridge search base, which
+     * may list several bases separated by semicolons.  Duplicate bases and
+     * bases nested in another base are removed.
+     *
+     * @param query
+     * @param parameters
+     * @param bridgeSearchBase
+     * @return
+     * @throws BridgeError
+     */
+    List<String> buildSearchBases(String query, java.util.Map<String, String> parameters, String bridgeSearchBase) throws BridgeError {
+        List<String> searchBases = new ArrayList<String>();
+        for (String base : LdapSearchBases.split(bridgeSearchBase)) {
+            searchBases.add(buildSearchBase(query, parameters, base));
+        }
+        return LdapSearchBases.prune(searchBases);
+    }
+
     String buildFilter(String query, java.util.Map<String, String> parameters, String structure) throws BridgeError {
         // Parse the query using the provided parameters first
         // <%=parameter["Search String"]%> with "Search String" = (samaccountname=*) becomes (samaccountname=*)
         // (samaccountname=<%=parameter["samaccountname"]%>) with "samaccountname" = "*" becomes (samaccountname=*)
         // OU=SomeOU(samaccountname=<%=parameter["samaccountname"]%>) with "samaccountname" = "*" becomes OU=SomeOU(samaccountname=*)
         // OU=<%=parameter["OU"]%>(samaccountname=<%=parameter["samaccountname"]%>) with "OU" = "SomeOU" and "samaccountname" = "*" becomes OU=SomeOU(samaccountname=*)
-        LdapQualificationParser parser = new LdapQualificationParser();
-        String filter = parser.parse(query, parameters);
-
-        // Find any "queries" () within the query, this is the query being passed into the bridge
-        Pattern pattern = Pattern.compile("\\(.*\\)");
-        Matcher matcher = pattern.matcher(filter);
-
-        String userFilter = "";
-        if (matcher.find()) {
-            userFilter = matcher.group();
-        }
+        // The "queries" () within the query are the query being passed into the bridge
+        String userFilter = getQueryTemplate(query).buildFilter(parameters);
 
         // We restrict the filter to the objectClass specified on the Structure
         String objectClassFilter = "(objectClass="+structure+")";
@@ -651,58 +2073,82 @@ public class LdapAdapter implements BridgeAdapter {
         }
     }
 
-    private Map<String,Object> buildRecordMap(List<String> fields, SearchResult entry) throws BridgeError, NamingException {
-        // Initialize the result
-        Map<String,Object> result = new LinkedHashMap();
-
-        // Retrieve the result attributes
-        Attributes attributes = entry.getAttributes();
-
-        // For each of the requested fields
-        for(String name : fields) {
-            // Initialize the value
-            String value = null;
-
-            // Retrieve the attribute associated with the field name
-            Attribute attribute = attributes.get(name);
-
-            // If the attribute is not null
-            if (attribute != null) {
-                // Retrieve the attribute syntax (IE the field type)
-                String syntax = getStructureFieldSyntax(name);
-
-                // If the attribute is a "Generalize Time", translate it to ISO8601
-                if (SYNTAX_GENERALIZED_TIME.equals(syntax)) {
-                    Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("GMT"));
-                    SimpleDateFormat arsFormat = new SimpleDateFormat(Properties.LDAP_DATE_FORMAT);
-                    arsFormat.setCalendar(calendar);
-                    SimpleDateFormat iso8601Format = new SimpleDateFormat(Properties.DATE_FORMAT);
-                    iso8601Format.setCalendar(calendar);
-                    try {
-                        Date date = arsFormat.parse(attribute.get().toString());
-                        value = iso8601Format.format(date);
-                    } catch (ParseException e) {
-                        throw new BridgeError("Unable to parse date value: "+value, e);
-                    }
-                // Multiple results found for attribute
-                } else if (attribute.size() > 1) {
-                    // attribute.getAll returns a NamingEnumeration<capture of ?>
-                    List list = Collections.list(attribute.getAll());
+    /**
+     * Returns the compiled query template, compiling it on first use.
+     *
+     * @param query
+     * @return
+     */
+    private LdapQueryTemplate getQueryTemplate(String query) {
+        String key = query == null ? "" : query;
+        LdapQueryTemplate template = templateCache.get(key);
+        if (template == null) {
+            template = LdapQueryTemplate.compile(key);
+            // Keep the cache bounded when queries are built dynamically
+            if (templateCache.size() >= MAXIMUM_TEMPLATES) {
+                templateCache.clear();
+            }
+            templateCache.put(key, template);
+        }
+        return template;
+    }
 
-                    value = JSONValue.toJSONString(list);
-                // If the attribute is not a type that needs translating
-                } else {
-                    // Set the value to be the string value
-                    value = attribute.get().toString();
+    /**
+     * Returns the projection of the fields for the structure, compiling it on
+     * first use.  The syntax of each field is resolved with the provided
+     * context, and only projections whose fields were all resolved are cached.
+     *
+     * @param context
+     * @param structure
+     * @param fields
+     * @return
+     */
+    private LdapProjection getProjection(LdapContext context, String structure, List<String> fields) {
+        String key = LdapProjection.key(structure, fields);
+        LdapProjection projection = projectionCache.get(key);
+        if (projection == null) {
+            projection = LdapProjection.compile(fields, name -> getStructureFieldSyntax(context, name));
+            if (projection.isComplete()) {
+                // Keep the cache bounded when the requested field lists vary
+                if (projectionCache.size() >= MAXIMUM_PROJECTIONS) {
+                    projectionCache.clear();
                 }
+                projectionCache.put(key, projection);
             }
+        }
+        return projection;
+    }
+
+    /**
+     * Internal class holding the list of structures and the subschema
+     * modifyTimestamp it was read at.
+     */
+    private static class StructureList {
+        private final String modifyTimestamp;
+        private final List<String> names;
 
-            // Att the att
-            result.put(name, value);
+        StructureList(String modifyTimestamp, List<String> names) {
+            this.modifyTimestamp = modifyTimestamp;
+            this.names = names;
         }
+    }
 
-        // Return the ercord map
-        return result;
+    /**
+     * Internal class describing a completed paged search.
+     */
+    private static class PageStatistics {
+        private long size = 0;
+        private int pages = 0;
+        private boolean serverSorted = false;
+        // True when the search stopped before the end of the result
+        private boolean limitReached = false;
+    }
+
+    /**
+     * Internal interface for operations executed with a pooled context.
+     */
+    private interface LdapOperation<T> {
+        T execute(LdapContext context) throws BridgeError, NamingException;
     }
 
     /**
@@ -0,0 +1,157 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Minimal BER encoder and decoder for the values of LDAP controls that are
+ * not provided by JNDI (RFC 4511 section 5.1 subset: definite lengths only).
+ */
+final class LdapBer {
+
+    static final int TAG_INTEGER = 0x02;
+    static final int TAG_ENUMERATED = 0x0a;
+    static final int TAG_SEQUENCE = 0x30;
+
+    private LdapBer() {}
+
+    /**
+     * Encodes a tag, length and value.
+     */
+    static byte[] encode(int tag, byte[] content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length + 6);
+        out.write(tag);
+        int length = content.length;
+        if (length < 0x80) {
+            out.write(length);
+        } else {
+            int bytes = length > 0xffffff ? 4 : length > 0xffff ? 3 : length > 0xff ? 2 : 1;
+            out.write(0x80 | bytes);
+            for (int i = bytes - 1; i >= 0; i--) {
+                out.write((length >>> (8 * i)) & 0xff);
+            }
+        }
+        out.write(content, 0, content.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes the concatenation of the already encoded elements.
+     */
+    static byte[] encodeConstructed(int tag, byte[]... elements) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] element : elements) {
+            out.write(element, 0, element.length);
+        }
+        return encode(tag, out.toByteArray());
+    }
+
+    static byte[] encodeInteger(int tag, long value) {
+        // Minimal two's complement representation
+        int bytes = 8;
+        while (bytes > 1) {
+            long top = value >> (8 * (bytes - 1) - 1);
+            if (top == 0 || top == -1) {
+                bytes--;
+            } else {
+                break;
+            }
+        }
+        byte[] content = new byte[bytes];
+        for (int i = 0; i < bytes; i++) {
+            content[i] = (byte)(value >>> (8 * (bytes - 1 - i)));
+        }
+        return encode(tag, content);
+    }
+
+    static byte[] encodeInteger(long value) {
+        return encodeInteger(TAG_INTEGER, value);
+    }
+
+    /**
+     * Sequential reader over BER encoded elements.
+     */
+    static class Reader {
+        private final byte[] data;
+        private final int end;
+        private int position;
+
+        Reader(byte[] data) {
+            this(data, 0, data == null ? 0 : data.length);
+        }
+
+        private Reader(byte[] data, int start, int end) {
+            this.data = data;
+            this.position = start;
+            this.end = end;
+        }
+
+        boolean hasMore() {
+            return position < end;
+        }
+
+        /**
+         * Returns the tag of the next element without consuming it.
+         */
+        int peekTag() throws IOException {
+            if (!hasMore()) {
+                throw new IOException("Unexpected end of BER data.");
+            }
+            return data[position] & 0xff;
+        }
+
+        /**
+         * Reads a constructed element and returns a reader over its content.
+         */
+        Reader readConstructed(int expectedTag) throws IOException {
+            int length = readHeader(expectedTag);
+            Reader reader = new Reader(data, position, position + length);
+            position += length;
+            return reader;
+        }
+
+        long readInteger(int expectedTag) throws IOException {
+            int length = readHeader(expectedTag);
+            if (length < 1 || length > 8) {
+                throw new IOException("Unsupported BER integer length: "+length);
+            }
+            long value = data[position]; // sign extended
+            for (int i = 1; i < length; i++) {
+                value = (value << 8) | (data[position + i] & 0xff);
+            }
+            position += length;
+            return value;
+        }
+
+        long readInteger() throws IOException {
+            return readInteger(TAG_INTEGER);
+        }
+
+        private int readHeader(int expectedTag) throws IOException {
+            int tag = peekTag();
+            if (tag != expectedTag) {
+                throw new IOException("Unexpected BER tag 0x"+Integer.toHexString(tag)+
+                    ", expected 0x"+Integer.toHexString(expectedTag)+".");
+            }
+            position++;
+            if (position >= end) {
+                throw new IOException("Unexpected end of BER data.");
+            }
+            int length = data[position++] & 0xff;
+            if ((length & 0x80) != 0) {
+                int bytes = length & 0x7f;
+                if (bytes == 0 || bytes > 4) {
+                    throw new IOException("Unsupported BER length encoding.");
+                }
+                length = 0;
+                for (int i = 0; i < bytes; i++) {
+                    length = (length << 8) | (data[position++] & 0xff);
+                }
+            }
+            if (length < 0 || position + length > end) {
+                throw new IOException("BER length exceeds the available data.");
+            }
+            return length;
+        }
+    }
+}
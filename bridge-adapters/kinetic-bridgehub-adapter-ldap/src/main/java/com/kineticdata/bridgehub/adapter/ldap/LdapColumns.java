@@ -0,0 +1,51 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dictionary of column names shared by compact entries, so each entry holds
+ * its values in an array indexed by column instead of a map keyed by name.
+ * Columns are only ever added, and lookups do not lock.
+ */
+class LdapColumns {
+
+    private volatile Map<String,Integer> indexes = Collections.emptyMap();
+    private volatile String[] names = new String[0];
+
+    /**
+     * Returns the index of the column, adding it when it is new.
+     */
+    synchronized int add(String name) {
+        Integer index = indexes.get(name);
+        if (index != null) {
+            return index;
+        }
+        // Copy on write, readers see either the previous or the new columns
+        Map<String,Integer> updated = new HashMap<String,Integer>(indexes);
+        updated.put(name, names.length);
+        String[] updatedNames = Arrays.copyOf(names, names.length + 1);
+        updatedNames[names.length] = name;
+        names = updatedNames;
+        indexes = updated;
+        return updatedNames.length - 1;
+    }
+
+    /**
+     * Returns the index of the column, or -1 when there is no such column.
+     */
+    int indexOf(String name) {
+        Integer index = indexes.get(name);
+        return index == null ? -1 : index;
+    }
+
+    String getName(int index) {
+        return names[index];
+    }
+
+    int size() {
+        return names.length;
+    }
+}
@@ -0,0 +1,187 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.Record;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column oriented copy of a record list, as held by the result cache.
+ *
+ * The field names of the records are held once as columns, and the values
+ * of each column in an array indexed by record.  String values go through
+ * the intern pool so values repeated across records (and across cached
+ * results) are shared, and multiple value lists are held as arrays.
+ */
+class LdapCompactRecordList {
+
+    // Marks a column the record has no field for
+    private static final Object ABSENT = new Object();
+
+    private final List<String> fields;
+    private final Map<String,String> metadata;
+    private final String[] columns;
+    // Values of each column, indexed by column then record
+    private final Object[][] values;
+    // Records without a record map (null when every record has one)
+    private final boolean[] nullRecords;
+    private final int size;
+    private final long bytes;
+
+    private LdapCompactRecordList(List<String> fields, Map<String,String> metadata, String[] columns,
+        Object[][] values, boolean[] nullRecords, int size
+    ) {
+        this.fields = fields;
+        this.metadata = metadata;
+        this.columns = columns;
+        this.values = values;
+        this.nullRecords = nullRecords;
+        this.size = size;
+        this.bytes = estimateBytes();
+    }
+
+    /**
+     * Builds the compact copy of the record list, interning its values.
+     *
+     * @param recordList
+     * @param pool
+     * @return
+     */
+    static LdapCompactRecordList of(RecordList recordList, LdapInternPool pool) {
+        List<Record> records = recordList.getRecords();
+        // Collect the columns in the order the records list their fields
+        Map<String,Integer> columnIndexes = new LinkedHashMap<String,Integer>();
+        boolean[] nullRecords = null;
+        for (int row = 0; row < records.size(); row++) {
+            Map<String,Object> record = records.get(row).getRecord();
+            if (record == null) {
+                if (nullRecords == null) {
+                    nullRecords = new boolean[records.size()];
+                }
+                nullRecords[row] = true;
+                continue;
+            }
+            for (String field : record.keySet()) {
+                if (!columnIndexes.containsKey(field)) {
+                    columnIndexes.put(field, columnIndexes.size());
+                }
+            }
+        }
+
+        Object[][] values = new Object[columnIndexes.size()][records.size()];
+        for (Object[] column : values) {
+            Arrays.fill(column, ABSENT);
+        }
+        for (int row = 0; row < records.size(); row++) {
+            Map<String,Object> record = records.get(row).getRecord();
+            if (record != null) {
+                for (Map.Entry<String,Object> field : record.entrySet()) {
+                    values[columnIndexes.get(field.getKey())][row] = compact(field.getValue(), pool);
+                }
+            }
+        }
+
+        return new LdapCompactRecordList(
+            recordList.getFields() == null ? null : new ArrayList<String>(recordList.getFields()),
+            recordList.getMetadata() == null ? null : new LinkedHashMap<String,String>(recordList.getMetadata()),
+            columnIndexes.keySet().toArray(new String[columnIndexes.size()]),
+            values, nullRecords, records.size());
+    }
+
+    /**
+     * Returns a new record list holding the records, with their fields in
+     * column order.
+     */
+    RecordList toRecordList() {
+        List<Record> records = new ArrayList<Record>(size);
+        for (int row = 0; row < size; row++) {
+            if (nullRecords != null && nullRecords[row]) {
+                records.add(new Record(null));
+                continue;
+            }
+            Map<String,Object> record = new LinkedHashMap<String,Object>(columns.length * 2);
+            for (int column = 0; column < columns.length; column++) {
+                Object value = values[column][row];
+                if (value != ABSENT) {
+                    record.put(columns[column], value instanceof Object[]
+                        ? new ArrayList<Object>(Arrays.asList((Object[])value))
+                        : value);
+                }
+            }
+            records.add(new Record(record));
+        }
+        return new RecordList(fields == null ? null : new ArrayList<String>(fields), records,
+            metadata == null ? null : new LinkedHashMap<String,String>(metadata));
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the estimated memory used by the compact copy.
+     */
+    long getBytes() {
+        return bytes;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private static Object compact(Object value, LdapInternPool pool) {
+        if (value instanceof List) {
+            List<?> list = (List<?>)value;
+            Object[] array = new Object[list.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = pool.intern(list.get(i));
+            }
+            return array;
+        }
+        return pool.intern(value);
+    }
+
+    /**
+     * Estimates the memory used: object headers, the column arrays and two
+     * bytes per character of the names and of each distinct value object
+     * (values shared between records are counted once).
+     */
+    private long estimateBytes() {
+        long total = 96 + (nullRecords == null ? 0 : 16 + size);
+        IdentityHashMap<Object,Boolean> counted = new IdentityHashMap<Object,Boolean>();
+        if (metadata != null) {
+            for (Map.Entry<String,String> entry : metadata.entrySet()) {
+                total += 48 + estimateBytes(entry.getKey(), counted) + estimateBytes(entry.getValue(), counted);
+            }
+        }
+        for (int column = 0; column < columns.length; column++) {
+            total += 16 + 8L * size + estimateBytes(columns[column], counted);
+            for (Object value : values[column]) {
+                if (value instanceof Object[]) {
+                    total += 16 + 8L * ((Object[])value).length;
+                    for (Object item : (Object[])value) {
+                        total += estimateBytes(item, counted);
+                    }
+                } else if (value != ABSENT) {
+                    total += estimateBytes(value, counted);
+                }
+            }
+        }
+        return total;
+    }
+
+    private static long estimateBytes(Object value, IdentityHashMap<Object,Boolean> counted) {
+        if (value == null || counted.put(value, Boolean.TRUE) != null) {
+            return 0;
+        } else if (value instanceof String) {
+            return 40 + 2L * ((String)value).length();
+        } else if (value instanceof Number || value instanceof Boolean) {
+            return 24;
+        }
+        return 40 + 2L * value.toString().length();
+    }
+}
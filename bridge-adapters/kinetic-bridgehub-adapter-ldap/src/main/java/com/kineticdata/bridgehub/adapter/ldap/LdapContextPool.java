@@ -0,0 +1,413 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.naming.NamingException;
+import javax.naming.ldap.LdapContext;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of bound LdapContext connections owned by the adapter.
+ *
+ * Contexts are handed out exclusively (an LdapContext is not thread safe) and
+ * must always be given back with {@link #release(LdapContext)}.  Idle contexts
+ * are validated with a cheap root DSE read before they are reused, contexts
+ * that outlive the idle timeout or the maximum lifetime are closed, and a
+ * borrower waits at most the configured wait timeout for a free slot.
+ *
+ * A leased context can also be parked between requests, which keeps the
+ * connection (and any server side paging state bound to it) reserved until
+ * it is resumed by the next request or expires with the idle timeout.  At
+ * most one less than the maximum size is parked, and a borrower that finds
+ * no free slot takes over the slot of the oldest parked context instead of
+ * waiting, so abandoned pages never hold up other requests.
+ */
+class LdapContextPool {
+
+    /** Defines the logger */
+    protected static final org.slf4j.Logger logger = LoggerFactory.getLogger(LdapContextPool.class);
+
+    /** Idle contexts used more recently than this are reused without a validation probe. */
+    static final long VALIDATION_INTERVAL = 5000L;
+
+    /** Interval between eviction runs. */
+    static final long EVICTION_INTERVAL = 30000L;
+
+    /** Time a parked context is kept when the pool has no idle timeout. */
+    static final long DEFAULT_PARK_TIMEOUT = 300000L;
+
+    /** Creates new bound contexts for the pool. */
+    interface ContextFactory {
+        LdapContext create() throws BridgeError;
+    }
+
+    private final ContextFactory factory;
+    private final int minimumSize;
+    private final int maximumParked;
+    private final long idleTimeout;
+    private final long maximumLifetime;
+    private final long waitTimeout;
+
+    // Permits bound the number of leased contexts to the maximum pool size
+    private final Semaphore permits;
+    // Idle contexts, most recently used first
+    private final LinkedBlockingDeque<PooledContext> idle = new LinkedBlockingDeque<>();
+    // Contexts currently handed out, keyed by identity
+    private final Map<LdapContext,PooledContext> leased = new ConcurrentHashMap<>();
+    // Contexts reserved between requests, keyed by park id
+    private final Map<String,PooledContext> parked = new ConcurrentHashMap<>();
+    // Orders parked contexts, so the oldest is reclaimed first
+    private final AtomicLong parkSequence = new AtomicLong();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+
+    /**
+     * @param factory used to open new contexts
+     * @param minimumSize number of contexts kept open while idle
+     * @param maximumSize maximum number of contexts leased at once
+     * @param idleTimeout milliseconds an idle context is kept before it is closed (0 keeps it forever)
+     * @param maximumLifetime milliseconds a context is used before it is replaced (0 never replaces it)
+     * @param waitTimeout milliseconds a borrower waits for a free context
+     */
+    LdapContextPool(ContextFactory factory, int minimumSize, int maximumSize,
+        long idleTimeout, long maximumLifetime, long waitTimeout
+    ) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("The maximum pool size must be at least 1.");
+        }
+        this.factory = factory;
+        this.minimumSize = Math.max(0, Math.min(minimumSize, maximumSize));
+        this.maximumParked = maximumSize - 1;
+        this.idleTimeout = idleTimeout;
+        this.maximumLifetime = maximumLifetime;
+        this.waitTimeout = waitTimeout;
+        this.permits = new Semaphore(maximumSize, true);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ldap-context-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.evictor.scheduleWithFixedDelay(this::evict, EVICTION_INTERVAL, EVICTION_INTERVAL,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Leases a context, reusing a healthy idle one when possible.
+     *
+     * @return an exclusively leased context
+     * @throws BridgeError if no context becomes available within the wait timeout
+     */
+    LdapContext borrow() throws BridgeError {
+        return borrow(waitTimeout, true);
+    }
+
+    /**
+     * Leases a context, waiting at most the given time for a free slot.
+     *
+     * @param waitTimeout milliseconds to wait for a free context
+     * @param reclaimParked true to take over the slot of a parked context
+     *   when none is free (background checks leave parked contexts alone)
+     * @return an exclusively leased context
+     * @throws BridgeError if no context becomes available within the wait timeout
+     */
+    LdapContext borrow(long waitTimeout, boolean reclaimParked) throws BridgeError {
+        if (closed) {
+            throw new BridgeError("The LDAP connection pool has been closed.");
+        }
+        try {
+            // Take over the slot of the oldest parked context before waiting for one
+            if (!permits.tryAcquire()
+                && !(reclaimParked && takeOldestParked())
+                && !permits.tryAcquire(waitTimeout, TimeUnit.MILLISECONDS)
+                && !(reclaimParked && takeOldestParked())
+            ) {
+                throw new BridgeError("Timed out waiting "+waitTimeout+"ms for an available LDAP connection.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BridgeError("Interrupted while waiting for an available LDAP connection.", e);
+        }
+
+        try {
+            // Take the most recently used idle context that is still healthy
+            PooledContext entry;
+            while ((entry = idle.pollFirst()) != null) {
+                if (isReusable(entry)) {
+                    break;
+                }
+                destroy(entry);
+            }
+            // Open a new context if there was no idle one to reuse
+            if (entry == null) {
+                entry = new PooledContext(factory.create());
+            }
+            entry.lastUsed = System.currentTimeMillis();
+            leased.put(entry.context, entry);
+            return entry.context;
+        } catch (BridgeError | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a leased context to the pool.  Contexts that were invalidated,
+     * have expired or belong to a closed pool are closed instead.
+     *
+     * @param context the context returned by {@link #borrow()}
+     */
+    void release(LdapContext context) {
+        if (context == null) {
+            return;
+        }
+        PooledContext entry = leased.remove(context);
+        if (entry == null) {
+            // Not leased from this pool, simply close it
+            closeQuietly(context);
+            return;
+        }
+        try {
+            if (entry.broken || closed || isExpired(entry, System.currentTimeMillis())) {
+                destroy(entry);
+            } else {
+                try {
+                    // Clear any paging or sorting controls left by the last operation
+                    context.setRequestControls(null);
+                    entry.lastUsed = System.currentTimeMillis();
+                    idle.offerFirst(entry);
+                } catch (NamingException e) {
+                    destroy(entry);
+                }
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Marks a leased context as unusable so it is closed instead of being
+     * returned to the idle set when it is released.
+     *
+     * @param context the leased context
+     */
+    void invalidate(LdapContext context) {
+        PooledContext entry = context == null ? null : leased.get(context);
+        if (entry != null) {
+            entry.broken = true;
+        }
+    }
+
+    /**
+     * Reserves a leased context for a later request instead of releasing it.
+     * The context keeps its request controls and its pool slot.  When the
+     * parked limit is reached the oldest parked context is closed to make
+     * room, and a pool of size 1 never parks.
+     *
+     * @param context a leased context
+     * @return the id used to resume the context, or null if the context was
+     *   released instead
+     */
+    String park(LdapContext context) {
+        PooledContext entry = leased.get(context);
+        if (entry == null) {
+            return null;
+        }
+        while (!closed && maximumParked > 0 && parked.size() >= maximumParked) {
+            if (takeOldestParked()) {
+                permits.release();
+            }
+        }
+        if (closed || maximumParked < 1) {
+            release(context);
+            return null;
+        }
+        leased.remove(context);
+        String id = UUID.randomUUID().toString();
+        entry.lastUsed = System.currentTimeMillis();
+        entry.parkedAt = parkSequence.incrementAndGet();
+        parked.put(id, entry);
+        return id;
+    }
+
+    /**
+     * Leases a parked context again.
+     *
+     * @param id the id returned by {@link #park(LdapContext)}
+     * @return the context, or null if it expired or was reclaimed
+     */
+    LdapContext resume(String id) {
+        PooledContext entry = id == null ? null : parked.remove(id);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastUsed = System.currentTimeMillis();
+        leased.put(entry.context, entry);
+        return entry.context;
+    }
+
+    /**
+     * Opens contexts until the minimum size is reached.  Failures are logged
+     * and left for the next eviction run.
+     */
+    void prefill() {
+        while (!closed && idle.size() + leased.size() < minimumSize && permits.tryAcquire()) {
+            try {
+                idle.offerLast(new PooledContext(factory.create()));
+            } catch (BridgeError e) {
+                logger.warn("Unable to open an LDAP connection for the pool: "+e.getMessage());
+                break;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Closes idle contexts that exceeded the idle timeout or maximum lifetime,
+     * then tops the pool back up to the minimum size.
+     */
+    void evict() {
+        try {
+            long now = System.currentTimeMillis();
+            int retained = leased.size();
+            // Walk from the least recently used end so the freshest contexts are kept
+            Iterator<PooledContext> iterator = idle.descendingIterator();
+            while (iterator.hasNext()) {
+                PooledContext entry = iterator.next();
+                boolean idleTooLong = idleTimeout > 0 && now - entry.lastUsed > idleTimeout
+                    && idle.size() + retained > minimumSize;
+                if ((idleTooLong || isExpired(entry, now)) && idle.remove(entry)) {
+                    destroy(entry);
+                }
+            }
+            // Give back parked contexts that were never resumed
+            long parkTimeout = idleTimeout > 0 ? idleTimeout : DEFAULT_PARK_TIMEOUT;
+            for (Map.Entry<String,PooledContext> parkedEntry : parked.entrySet()) {
+                if (now - parkedEntry.getValue().lastUsed > parkTimeout
+                    && parked.remove(parkedEntry.getKey(), parkedEntry.getValue())
+                ) {
+                    destroy(parkedEntry.getValue());
+                    permits.release();
+                }
+            }
+            prefill();
+        } catch (RuntimeException e) {
+            logger.warn("Unexpected problem evicting LDAP connections.", e);
+        }
+    }
+
+    /**
+     * Closes every idle context and stops the evictor.  Leased contexts are
+     * closed as they are released.
+     */
+    void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledContext entry;
+        while ((entry = idle.pollFirst()) != null) {
+            destroy(entry);
+        }
+        for (String id : parked.keySet()) {
+            entry = parked.remove(id);
+            if (entry != null) {
+                destroy(entry);
+                permits.release();
+            }
+        }
+    }
+
+    int getIdleCount() {
+        return idle.size();
+    }
+
+    int getLeasedCount() {
+        return leased.size();
+    }
+
+    int getParkedCount() {
+        return parked.size();
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * Closes the parked context that has waited the longest.  Its permit is
+     * handed to the caller, who must either use or release it.
+     */
+    private boolean takeOldestParked() {
+        Map.Entry<String,PooledContext> oldest = null;
+        for (Map.Entry<String,PooledContext> entry : parked.entrySet()) {
+            if (oldest == null || entry.getValue().parkedAt < oldest.getValue().parkedAt) {
+                oldest = entry;
+            }
+        }
+        if (oldest != null && parked.remove(oldest.getKey(), oldest.getValue())) {
+            logger.debug("Reclaiming a parked LDAP connection to satisfy a new request.");
+            destroy(oldest.getValue());
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isExpired(PooledContext entry, long now) {
+        return maximumLifetime > 0 && now - entry.createdAt > maximumLifetime;
+    }
+
+    private boolean isReusable(PooledContext entry) {
+        long now = System.currentTimeMillis();
+        if (isExpired(entry, now) || (idleTimeout > 0 && now - entry.lastUsed > idleTimeout)) {
+            return false;
+        }
+        if (now - entry.lastUsed < VALIDATION_INTERVAL) {
+            return true;
+        }
+        // Probe the connection with a single attribute read of the root DSE
+        try {
+            entry.context.getAttributes("", new String[]{"supportedLDAPVersion"});
+            return true;
+        } catch (NamingException e) {
+            logger.debug("Discarding LDAP connection that failed validation: "+e.getMessage());
+            return false;
+        }
+    }
+
+    private void destroy(PooledContext entry) {
+        closeQuietly(entry.context);
+    }
+
+    private static void closeQuietly(LdapContext context) {
+        try {
+            context.close();
+        } catch (NamingException e) {
+            logger.debug("There was a problem closing the connection.", e);
+        }
+    }
+
+    /**
+     * Internal class used to track the age and usage of a pooled context.
+     */
+    private static class PooledContext {
+        private final LdapContext context;
+        private final long createdAt;
+        private volatile long lastUsed;
+        private volatile long parkedAt;
+        private volatile boolean broken = false;
+
+        PooledContext(LdapContext context) {
+            this.context = context;
+            this.createdAt = System.currentTimeMillis();
+            this.lastUsed = this.createdAt;
+        }
+    }
+}
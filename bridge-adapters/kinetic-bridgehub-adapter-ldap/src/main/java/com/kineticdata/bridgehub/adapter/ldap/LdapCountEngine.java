@@ -0,0 +1,153 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import java.io.IOException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.SizeLimitExceededException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+
+/**
+ * Counts the entries matching a filter without transferring their attributes.
+ *
+ * The search requests the special "1.1" attribute list (no attributes) and
+ * walks the result with the paged results control so that directories with a
+ * maximum page size (such as Active Directory) return every entry.  Entries
+ * are discarded as they are read.
+ */
+class LdapCountEngine {
+
+    /** Attribute list requesting that no attributes are returned (RFC 4511). */
+    static final String[] NO_ATTRIBUTES = new String[]{"1.1"};
+
+    /** Page size used when walking the result, matches the Active Directory MaxPageSize default. */
+    static final int DEFAULT_PAGE_SIZE = 1000;
+
+    private final int pageSize;
+    private final long limit;
+
+    /**
+     * @param pageSize number of entries requested per page
+     * @param limit maximum number of entries counted (0 counts every entry)
+     */
+    LdapCountEngine(int pageSize, long limit) {
+        this.pageSize = pageSize;
+        this.limit = limit;
+    }
+
+    /**
+     * Returns the maximum number of entries counted (0 counts every entry).
+     */
+    long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Counts the entries below the search base that match the filter.
+     *
+     * @param context a leased context, its request controls are replaced
+     * @param searchBase
+     * @param filter
+     * @return the count and whether the count limit stopped the search
+     * @throws NamingException
+     * @throws IOException
+     */
+    Result count(LdapContext context, String searchBase, String filter) throws NamingException, IOException {
+        // Build up the search controls
+        SearchControls controls = new SearchControls();
+        controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        controls.setReturningAttributes(NO_ATTRIBUTES);
+        controls.setReturningObjFlag(false);
+        if (limit > 0) {
+            controls.setCountLimit(limit);
+        }
+
+        long count = 0L;
+        boolean limitReached = false;
+        byte[] cookie = null;
+
+        context.setRequestControls(new Control[]{new PagedResultsControl(pageSize, Control.CRITICAL)});
+        do {
+            NamingEnumeration<SearchResult> results = context.search(searchBase, filter, controls);
+            try {
+                while (results.hasMore()) {
+                    results.next();
+                    count++;
+                }
+            } catch (SizeLimitExceededException e) {
+                // The server stopped at the count limit
+                limitReached = true;
+                cookie = null;
+                break;
+            } finally {
+                results.close();
+            }
+
+            cookie = getCookie(context.getResponseControls());
+
+            // Stop once the limit has been counted, abandoning the paged search
+            if (limit > 0 && count >= limit && cookie != null) {
+                limitReached = true;
+                abandon(context, searchBase, filter, controls, cookie);
+                break;
+            }
+
+            // Request the next page
+            context.setRequestControls(new Control[]{new PagedResultsControl(pageSize, cookie, Control.CRITICAL)});
+        } while (cookie != null);
+
+        return new Result(limit > 0 ? Math.min(count, limit) : count, limitReached);
+    }
+
+    /**
+     * Releases the server side state of a paged search by requesting a page
+     * of size zero with the outstanding cookie (RFC 2696).
+     */
+    static void abandon(LdapContext context, String searchBase, String filter,
+        SearchControls controls, byte[] cookie
+    ) throws NamingException, IOException {
+        context.setRequestControls(new Control[]{new PagedResultsControl(0, cookie, Control.CRITICAL)});
+        context.search(searchBase, filter, controls).close();
+    }
+
+    /**
+     * Returns the cookie of the paged results response control, or null when
+     * the server has no more pages.
+     */
+    static byte[] getCookie(Control[] responseControls) {
+        if (responseControls != null) {
+            for (Control control : responseControls) {
+                if (control instanceof PagedResultsResponseControl) {
+                    byte[] cookie = ((PagedResultsResponseControl)control).getCookie();
+                    return cookie == null || cookie.length == 0 ? null : cookie;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Internal class holding the outcome of a count.
+     */
+    static class Result {
+        private final long count;
+        private final boolean limitReached;
+
+        Result(long count, boolean limitReached) {
+            this.count = count;
+            this.limitReached = limitReached;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        boolean isLimitReached() {
+            return limitReached;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Storage of the replicated entries of a structure.
+ *
+ * The replica fills a new store on each full load and puts changed entries
+ * into the current store while requests read it, so implementations must be
+ * safe for concurrent use.  Each store decides which entries a filter is
+ * evaluated against, for instance from secondary indexes.
+ */
+interface LdapEntryStore {
+
+    /**
+     * Adds the entry, replacing any entry with the same normalized name.
+     *
+     * @param entry
+     */
+    void put(LdapReplica.Entry entry);
+
+    int size();
+
+    /**
+     * Returns the entries accepted by the scope that match the filter.
+     *
+     * @param filter a filter evaluable against the replicated attributes
+     * @param scope accepts the entries under the searched bases
+     * @return
+     */
+    List<LdapReplica.Entry> find(LdapFilter filter, Predicate<LdapReplica.Entry> scope);
+}
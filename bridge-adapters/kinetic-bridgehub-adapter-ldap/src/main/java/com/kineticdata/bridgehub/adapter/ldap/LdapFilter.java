@@ -0,0 +1,572 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parsed LDAP search filter (RFC 4515).
+ *
+ * Filters are immutable.  The string form is canonical: attribute
+ * descriptions are lower cased and values are kept as written, so two
+ * filters with the same string form select the same entries and the string
+ * can be used as a cache key.
+ */
+abstract class LdapFilter {
+
+    /** Defines the logger */
+    protected static final org.slf4j.Logger logger = LoggerFactory.getLogger(LdapFilter.class);
+
+    /**
+     * Parses the filter string.
+     *
+     * @param filter
+     * @return
+     * @throws BridgeError if the filter is not a valid RFC 4515 filter
+     */
+    static LdapFilter parse(String filter) throws BridgeError {
+        Parser parser = new Parser(filter.trim());
+        LdapFilter result = parser.parseFilter();
+        if (parser.position != parser.source.length()) {
+            throw new BridgeError("Unexpected characters at position "+parser.position+" of the filter: "+filter);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the canonical string of the optimized filter, or the filter as
+     * is when it can not be parsed (the directory then reports the problem).
+     *
+     * @param filter
+     * @return
+     */
+    static String optimize(String filter) {
+        try {
+            return parse(filter).normalize().toString();
+        } catch (BridgeError e) {
+            logger.debug("Unable to parse the filter, sending it as is: "+e.getMessage());
+            return filter;
+        }
+    }
+
+    /**
+     * Returns an equivalent filter with nested ANDs and ORs flattened,
+     * duplicate terms removed, double negations removed and the terms of each
+     * AND ordered so the most selective (equality) terms come first.
+     */
+    abstract LdapFilter normalize();
+
+    /**
+     * Returns the rank of the term when ordering the terms of an AND, lower
+     * ranks being more selective.
+     */
+    abstract int getSelectivityRank();
+
+    /**
+     * Returns true if the filter can be evaluated locally against entries
+     * holding the attributes: every attribute it tests is one of them and it
+     * uses no extensible match other than the Active Directory bitwise rules.
+     *
+     * @param attributes the lower cased attribute descriptions of the entries
+     */
+    abstract boolean isEvaluable(Set<String> attributes);
+
+    /**
+     * Evaluates the filter against an entry.  Values are compared case
+     * insensitively, which is how the directory compares the string syntaxes
+     * bridges query; ordering matches compare integers numerically.  The
+     * filter must be evaluable against the attributes of the entry.
+     *
+     * @param entry
+     * @return
+     */
+    abstract boolean matches(Values entry);
+
+    abstract void appendTo(StringBuilder builder);
+
+    /**
+     * The attribute values of an entry a filter is evaluated against.
+     */
+    interface Values {
+        /**
+         * @param attribute the lower cased attribute description
+         * @return the values (String or byte[]), or null when the entry has none
+         */
+        Collection<?> get(String attribute);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        appendTo(builder);
+        return builder.toString();
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        return object instanceof LdapFilter && toString().equals(object.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * FILTER TYPES
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * An AND ('&') or OR ('|') of filters.
+     */
+    static class Composite extends LdapFilter {
+        private final char operator;
+        private final List<LdapFilter> children;
+
+        Composite(char operator, List<LdapFilter> children) {
+            this.operator = operator;
+            this.children = Collections.unmodifiableList(children);
+        }
+
+        boolean isAnd() {
+            return operator == '&';
+        }
+
+        List<LdapFilter> getChildren() {
+            return children;
+        }
+
+        @Override
+        LdapFilter normalize() {
+            // Flatten nested composites of the same type and drop duplicates
+            Set<LdapFilter> terms = new LinkedHashSet<LdapFilter>();
+            for (LdapFilter child : children) {
+                LdapFilter normalized = child.normalize();
+                if (normalized instanceof Composite && ((Composite)normalized).operator == operator) {
+                    terms.addAll(((Composite)normalized).children);
+                } else {
+                    terms.add(normalized);
+                }
+            }
+            List<LdapFilter> result = new ArrayList<LdapFilter>(terms);
+            if (result.size() == 1) {
+                return result.get(0);
+            }
+            // Evaluate the most selective terms of an AND first (stable sort)
+            if (isAnd()) {
+                Collections.sort(result, (a, b) -> Integer.compare(a.getSelectivityRank(), b.getSelectivityRank()));
+            }
+            return new Composite(operator, result);
+        }
+
+        @Override
+        int getSelectivityRank() {
+            return 6;
+        }
+
+        @Override
+        boolean isEvaluable(Set<String> attributes) {
+            for (LdapFilter child : children) {
+                if (!child.isEvaluable(attributes)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        boolean matches(Values entry) {
+            // An empty AND is true and an empty OR is false (RFC 4526)
+            for (LdapFilter child : children) {
+                if (child.matches(entry) != isAnd()) {
+                    return !isAnd();
+                }
+            }
+            return isAnd();
+        }
+
+        @Override
+        void appendTo(StringBuilder builder) {
+            builder.append('(').append(operator);
+            for (LdapFilter child : children) {
+                child.appendTo(builder);
+            }
+            builder.append(')');
+        }
+    }
+
+    /**
+     * A negated filter ('!').
+     */
+    static class Not extends LdapFilter {
+        private final LdapFilter child;
+
+        Not(LdapFilter child) {
+            this.child = child;
+        }
+
+        LdapFilter getChild() {
+            return child;
+        }
+
+        @Override
+        LdapFilter normalize() {
+            LdapFilter normalized = child.normalize();
+            if (normalized instanceof Not) {
+                return ((Not)normalized).child;
+            }
+            return new Not(normalized);
+        }
+
+        @Override
+        int getSelectivityRank() {
+            return 5;
+        }
+
+        @Override
+        boolean isEvaluable(Set<String> attributes) {
+            return child.isEvaluable(attributes);
+        }
+
+        @Override
+        boolean matches(Values entry) {
+            return !child.matches(entry);
+        }
+
+        @Override
+        void appendTo(StringBuilder builder) {
+            builder.append("(!");
+            child.appendTo(builder);
+            builder.append(')');
+        }
+    }
+
+    /**
+     * A simple filter item: equality, substring, presence, approximate,
+     * ordering or extensible match.
+     */
+    static class Item extends LdapFilter {
+        static final String EQUAL = "=";
+        static final String APPROXIMATE = "~=";
+        static final String GREATER_OR_EQUAL = ">=";
+        static final String LESS_OR_EQUAL = "<=";
+        static final String EXTENSIBLE = ":=";
+        // Active Directory matching rules of integer attributes
+        static final String BITWISE_AND = "1.2.840.113556.1.4.803";
+        static final String BITWISE_OR = "1.2.840.113556.1.4.804";
+
+        private final String attribute;
+        private final String operator;
+        private final String value;
+
+        Item(String attribute, String operator, String value) {
+            this.attribute = attribute.toLowerCase(Locale.ROOT);
+            this.operator = operator;
+            // Object class names are case insensitive, so normalize them too
+            this.value = EQUAL.equals(operator) && "objectclass".equals(this.attribute)
+                ? value.toLowerCase(Locale.ROOT)
+                : value;
+        }
+
+        String getAttribute() {
+            return attribute;
+        }
+
+        String getOperator() {
+            return operator;
+        }
+
+        /** Returns the value as written in the filter (escaped). */
+        String getValue() {
+            return value;
+        }
+
+        boolean isPresence() {
+            return EQUAL.equals(operator) && "*".equals(value);
+        }
+
+        boolean isSubstring() {
+            return EQUAL.equals(operator) && !isPresence() && value.indexOf('*') >= 0;
+        }
+
+        boolean isEquality() {
+            return EQUAL.equals(operator) && value.indexOf('*') < 0;
+        }
+
+        @Override
+        LdapFilter normalize() {
+            return this;
+        }
+
+        @Override
+        boolean isEvaluable(Set<String> attributes) {
+            if (EXTENSIBLE.equals(operator)) {
+                String[] parts = attribute.split(":");
+                return parts.length == 2 && attributes.contains(parts[0])
+                    && (BITWISE_AND.equals(parts[1]) || BITWISE_OR.equals(parts[1]));
+            }
+            return attributes.contains(attribute);
+        }
+
+        @Override
+        boolean matches(Values entry) {
+            if (EXTENSIBLE.equals(operator)) {
+                return matchesBitwise(entry);
+            }
+            Collection<?> values = entry.get(attribute);
+            if (values == null || values.isEmpty()) {
+                return false;
+            }
+            if (isPresence()) {
+                return true;
+            }
+            byte[] assertion = unescape(isSubstring() ? "" : value);
+            String assertionString = new String(assertion, StandardCharsets.UTF_8);
+            String[] substrings = isSubstring() ? substrings() : null;
+            for (Object candidate : values) {
+                if (candidate instanceof byte[]) {
+                    if (!isSubstring() && (EQUAL.equals(operator) || APPROXIMATE.equals(operator))
+                        && Arrays.equals((byte[])candidate, assertion)) {
+                        return true;
+                    }
+                } else if (candidate != null && matchesValue(candidate.toString(), assertionString, substrings)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean matchesValue(String candidate, String assertion, String[] substrings) {
+            if (substrings != null) {
+                return matchesSubstrings(normalizeValue(candidate), substrings);
+            } else if (GREATER_OR_EQUAL.equals(operator)) {
+                return compare(candidate, assertion) >= 0;
+            } else if (LESS_OR_EQUAL.equals(operator)) {
+                return compare(candidate, assertion) <= 0;
+            }
+            // Active Directory matches an objectCategory name against the
+            // common name of the stored category DN
+            if ("objectcategory".equals(attribute) && assertion.indexOf('=') < 0) {
+                int start = candidate.indexOf('=');
+                int end = candidate.indexOf(',');
+                if (start >= 0 && end > start) {
+                    candidate = candidate.substring(start + 1, end);
+                }
+            }
+            return normalizeValue(candidate).equals(normalizeValue(assertion));
+        }
+
+        /**
+         * Returns the normalized initial, any and final parts of a substring
+         * assertion, the initial and final parts being empty when the value
+         * starts or ends with '*'.
+         */
+        String[] substrings() {
+            String[] parts = value.split("\\*", -1);
+            for (int i = 0; i < parts.length; i++) {
+                parts[i] = normalizeValue(new String(unescape(parts[i]), StandardCharsets.UTF_8));
+            }
+            return parts;
+        }
+
+        private boolean matchesBitwise(Values entry) {
+            String[] parts = attribute.split(":");
+            Collection<?> values = entry.get(parts[0]);
+            if (values == null || parts.length != 2) {
+                return false;
+            }
+            long mask;
+            try {
+                mask = Long.parseLong(new String(unescape(value), StandardCharsets.UTF_8).trim());
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            for (Object candidate : values) {
+                try {
+                    long bits = Long.parseLong(candidate.toString().trim());
+                    if (BITWISE_AND.equals(parts[1]) ? (bits & mask) == mask : (bits & mask) != 0) {
+                        return true;
+                    }
+                } catch (NumberFormatException e) {
+                    // Not an integer value, so it does not match
+                }
+            }
+            return false;
+        }
+
+        @Override
+        int getSelectivityRank() {
+            if (isEquality()) {
+                return "objectclass".equals(attribute) ? 3 : 0;
+            } else if (isSubstring()) {
+                return 2;
+            } else if (isPresence()) {
+                return 4;
+            }
+            return 1;
+        }
+
+        @Override
+        void appendTo(StringBuilder builder) {
+            builder.append('(').append(attribute).append(operator).append(value).append(')');
+        }
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * EVALUATION HELPERS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * Decodes the escaped filter value: each '\\' followed by two hex digits
+     * is a byte and the other characters are UTF-8 encoded.
+     */
+    static byte[] unescape(String value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(value.length());
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < value.length(); i++) {
+            char character = value.charAt(i);
+            if (character == '\\' && i + 2 < value.length()
+                && Character.digit(value.charAt(i + 1), 16) >= 0 && Character.digit(value.charAt(i + 2), 16) >= 0) {
+                byte[] encoded = text.toString().getBytes(StandardCharsets.UTF_8);
+                bytes.write(encoded, 0, encoded.length);
+                text.setLength(0);
+                bytes.write(Integer.parseInt(value.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                text.append(character);
+            }
+        }
+        byte[] encoded = text.toString().getBytes(StandardCharsets.UTF_8);
+        bytes.write(encoded, 0, encoded.length);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the form string values are compared in, which is also the key
+     * of the entry store indexes.
+     */
+    static String normalizeValue(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns true if the normalized value holds the substring parts in
+     * order, starting with the first part and ending with the last one.
+     */
+    static boolean matchesSubstrings(String value, String[] parts) {
+        if (!value.startsWith(parts[0])) {
+            return false;
+        }
+        int position = parts[0].length();
+        for (int i = 1; i < parts.length - 1; i++) {
+            int found = value.indexOf(parts[i], position);
+            if (found < 0) {
+                return false;
+            }
+            position = found + parts[i].length();
+        }
+        String last = parts[parts.length - 1];
+        return value.length() - last.length() >= position && value.endsWith(last);
+    }
+
+    /**
+     * Compares integers numerically and other values as case insensitive
+     * strings (which orders generalized times chronologically).
+     */
+    static int compare(String value, String assertion) {
+        try {
+            return Long.compare(Long.parseLong(value.trim()), Long.parseLong(assertion.trim()));
+        } catch (NumberFormatException e) {
+            return value.compareToIgnoreCase(assertion);
+        }
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PARSER
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * Internal recursive descent parser of the filter string.
+     */
+    private static class Parser {
+        private final String source;
+        private int position = 0;
+
+        Parser(String source) {
+            this.source = source;
+        }
+
+        LdapFilter parseFilter() throws BridgeError {
+            expect('(');
+            if (position >= source.length()) {
+                throw error("Unexpected end of the filter");
+            }
+            LdapFilter result;
+            char character = source.charAt(position);
+            if (character == '&' || character == '|') {
+                position++;
+                List<LdapFilter> children = new ArrayList<LdapFilter>();
+                while (position < source.length() && source.charAt(position) == '(') {
+                    children.add(parseFilter());
+                }
+                result = new Composite(character, children);
+            } else if (character == '!') {
+                position++;
+                result = new Not(parseFilter());
+            } else {
+                result = parseItem();
+            }
+            expect(')');
+            return result;
+        }
+
+        private LdapFilter parseItem() throws BridgeError {
+            int start = position;
+            int end = source.indexOf(')', start);
+            if (end < 0) {
+                throw error("Unterminated filter item");
+            }
+            String item = source.substring(start, end);
+            if (item.indexOf('(') >= 0) {
+                throw error("Unescaped '(' in the filter item");
+            }
+            int equals = item.indexOf('=');
+            if (equals < 1) {
+                throw error("Missing attribute or operator in the filter item");
+            }
+            String operator = Item.EQUAL;
+            int attributeEnd = equals;
+            char previous = item.charAt(equals - 1);
+            if (previous == '~' || previous == '>' || previous == '<' || previous == ':') {
+                operator = previous + "=";
+                attributeEnd = equals - 1;
+            }
+            String attribute = item.substring(0, attributeEnd).trim();
+            if (attribute.isEmpty() && !Item.EXTENSIBLE.equals(operator)) {
+                throw error("Missing attribute in the filter item");
+            }
+            position = end;
+            return new Item(attribute, operator, item.substring(equals + 1));
+        }
+
+        private void expect(char character) throws BridgeError {
+            if (position >= source.length() || source.charAt(position) != character) {
+                throw error("Expected '"+character+"'");
+            }
+            position++;
+        }
+
+        private BridgeError error(String message) {
+            return new BridgeError(message+" at position "+position+" of the filter: "+source);
+        }
+    }
+}
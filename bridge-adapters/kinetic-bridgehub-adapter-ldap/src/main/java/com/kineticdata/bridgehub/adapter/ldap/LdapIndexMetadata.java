@@ -0,0 +1,192 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The attributes the directory keeps an index for, used to classify search
+ * filters as indexed (the directory can locate the candidate entries with an
+ * index) or unindexed (the directory has to scan every entry in scope).
+ */
+class LdapIndexMetadata {
+
+    /** Defines the logger */
+    protected static final org.slf4j.Logger logger = LoggerFactory.getLogger(LdapIndexMetadata.class);
+
+    /** Active Directory searchFlags bit of attributes with an index. */
+    static final int SEARCH_FLAG_INDEXED = 0x1;
+    /** Active Directory searchFlags bit of attributes with a tuple (medial substring) index. */
+    static final int SEARCH_FLAG_TUPLE_INDEXED = 0x20;
+
+    private static final int PAGE_SIZE = 500;
+
+    /** Result of classifying a filter. */
+    enum Classification {
+        /** The filter can be resolved with an index. */
+        INDEXED,
+        /** The filter requires scanning the entries in scope. */
+        UNINDEXED,
+        /** The filter only restricts the object class, which does not decide. */
+        NEUTRAL
+    }
+
+    private final Set<String> indexed;
+    private final Set<String> tupleIndexed;
+
+    LdapIndexMetadata(Collection<String> indexed, Collection<String> tupleIndexed) {
+        this.indexed = lowerCase(indexed);
+        this.tupleIndexed = lowerCase(tupleIndexed);
+    }
+
+    /**
+     * Reads the Active Directory attributeSchema objects that have an index
+     * from the schema naming context.  Returns empty metadata when the
+     * directory does not publish a schema naming context.
+     *
+     * @param context
+     * @return
+     * @throws NamingException
+     * @throws IOException
+     */
+    static LdapIndexMetadata read(LdapContext context) throws NamingException, IOException {
+        Set<String> indexed = new HashSet<String>();
+        Set<String> tupleIndexed = new HashSet<String>();
+
+        Attribute namingContext = context.getAttributes("", new String[]{"schemaNamingContext"}).get("schemaNamingContext");
+        if (namingContext == null || namingContext.get() == null) {
+            return new LdapIndexMetadata(indexed, tupleIndexed);
+        }
+
+        SearchControls controls = new SearchControls();
+        controls.setSearchScope(SearchControls.ONELEVEL_SCOPE);
+        controls.setReturningAttributes(new String[]{"lDAPDisplayName", "searchFlags"});
+        // Select the attributes with an index bit set (LDAP_MATCHING_RULE_BIT_OR)
+        String filter = "(&(objectClass=attributeSchema)(searchFlags:1.2.840.113556.1.4.804:="+
+            (SEARCH_FLAG_INDEXED | SEARCH_FLAG_TUPLE_INDEXED)+"))";
+        byte[] cookie = null;
+        try {
+            do {
+                context.setRequestControls(new Control[]{new PagedResultsControl(PAGE_SIZE, cookie, Control.CRITICAL)});
+                NamingEnumeration<SearchResult> results = context.search(namingContext.get().toString(), filter, controls);
+                while (results.hasMore()) {
+                    Attributes attributes = results.next().getAttributes();
+                    Attribute name = attributes.get("lDAPDisplayName");
+                    Attribute flags = attributes.get("searchFlags");
+                    if (name == null || flags == null) {
+                        continue;
+                    }
+                    int searchFlags;
+                    try {
+                        searchFlags = Integer.parseInt(flags.get().toString().trim());
+                    } catch (NumberFormatException e) {
+                        logger.debug("Skipping the attribute "+name.get()+" with the unexpected searchFlags "+
+                            flags.get()+".");
+                        continue;
+                    }
+                    if ((searchFlags & SEARCH_FLAG_INDEXED) != 0) {
+                        indexed.add(name.get().toString());
+                    }
+                    if ((searchFlags & SEARCH_FLAG_TUPLE_INDEXED) != 0) {
+                        tupleIndexed.add(name.get().toString());
+                    }
+                }
+                cookie = LdapCountEngine.getCookie(context.getResponseControls());
+            } while (cookie != null);
+        } finally {
+            context.setRequestControls(null);
+        }
+        return new LdapIndexMetadata(indexed, tupleIndexed);
+    }
+
+    /**
+     * Returns metadata combining the indexes of both.
+     */
+    LdapIndexMetadata merge(LdapIndexMetadata other) {
+        Set<String> mergedIndexed = new HashSet<String>(indexed);
+        mergedIndexed.addAll(other.indexed);
+        Set<String> mergedTupleIndexed = new HashSet<String>(tupleIndexed);
+        mergedTupleIndexed.addAll(other.tupleIndexed);
+        return new LdapIndexMetadata(mergedIndexed, mergedTupleIndexed);
+    }
+
+    boolean isEmpty() {
+        return indexed.isEmpty() && tupleIndexed.isEmpty();
+    }
+
+    int size() {
+        return indexed.size();
+    }
+
+    boolean isIndexed(String attribute) {
+        return indexed.contains(attribute.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Classifies the filter.  An AND is indexed when any of its terms is
+     * indexed, an OR only when none of its terms is unindexed, and negations
+     * always require a scan.  Substring terms with a leading wildcard need a
+     * tuple index.  Object class terms are neutral: they are present in every
+     * bridge filter and do not narrow the search on their own, so a composite
+     * of only neutral terms is neutral.
+     *
+     * @param filter
+     * @return
+     */
+    Classification classify(LdapFilter filter) {
+        if (filter instanceof LdapFilter.Composite) {
+            LdapFilter.Composite composite = (LdapFilter.Composite)filter;
+            boolean anyIndexed = false;
+            boolean anyUnindexed = false;
+            for (LdapFilter child : composite.getChildren()) {
+                Classification classification = classify(child);
+                anyIndexed |= classification == Classification.INDEXED;
+                anyUnindexed |= classification == Classification.UNINDEXED;
+            }
+            if (composite.isAnd()) {
+                return anyIndexed ? Classification.INDEXED
+                    : anyUnindexed ? Classification.UNINDEXED
+                    : Classification.NEUTRAL;
+            }
+            return anyUnindexed ? Classification.UNINDEXED
+                : anyIndexed ? Classification.INDEXED
+                : Classification.NEUTRAL;
+        } else if (filter instanceof LdapFilter.Not) {
+            return Classification.UNINDEXED;
+        }
+
+        LdapFilter.Item item = (LdapFilter.Item)filter;
+        String attribute = item.getAttribute();
+        if ("objectclass".equals(attribute) || "objectcategory".equals(attribute)) {
+            return Classification.NEUTRAL;
+        }
+        // Leading wildcards can only use a tuple index
+        if (item.isSubstring() && item.getValue().startsWith("*")) {
+            return tupleIndexed.contains(attribute) ? Classification.INDEXED : Classification.UNINDEXED;
+        }
+        return indexed.contains(attribute) ? Classification.INDEXED : Classification.UNINDEXED;
+    }
+
+    private static Set<String> lowerCase(Collection<String> values) {
+        Set<String> result = new HashSet<String>();
+        for (String value : values) {
+            if (value != null && !value.trim().isEmpty()) {
+                result.add(value.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+}
@@ -0,0 +1,251 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * Entry store with secondary indexes on selected attributes.
+ *
+ * Equality indexes hash the normalized values of an attribute, and prefix
+ * indexes keep them sorted so the initial part of a substring term selects
+ * a range of values.  A find evaluates the filter against the candidates of
+ * its most selective indexed term (the smallest candidate set of an AND,
+ * the union of the candidates of an OR whose terms are all indexed), and
+ * against every entry when no term is indexed.
+ */
+class LdapIndexedEntryStore implements LdapEntryStore {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Normalized entry name to entry
+    private final Map<String,LdapReplica.Entry> entries = new HashMap<String,LdapReplica.Entry>();
+    // Lower cased attribute to its index, keyed by normalized value
+    private final Map<String,Map<String,Set<LdapReplica.Entry>>> equalityIndexes =
+        new HashMap<String,Map<String,Set<LdapReplica.Entry>>>();
+    private final Map<String,NavigableMap<String,Set<LdapReplica.Entry>>> prefixIndexes =
+        new HashMap<String,NavigableMap<String,Set<LdapReplica.Entry>>>();
+
+    private final AtomicLong indexedCount = new AtomicLong();
+    private final AtomicLong scanCount = new AtomicLong();
+
+    /**
+     * @param equalityAttributes attributes with an equality index
+     * @param prefixAttributes attributes with a prefix index
+     */
+    LdapIndexedEntryStore(Collection<String> equalityAttributes, Collection<String> prefixAttributes) {
+        for (String attribute : equalityAttributes) {
+            if (!attribute.trim().isEmpty()) {
+                equalityIndexes.put(attribute.trim().toLowerCase(Locale.ROOT),
+                    new HashMap<String,Set<LdapReplica.Entry>>());
+            }
+        }
+        for (String attribute : prefixAttributes) {
+            if (!attribute.trim().isEmpty()) {
+                prefixIndexes.put(attribute.trim().toLowerCase(Locale.ROOT),
+                    new TreeMap<String,Set<LdapReplica.Entry>>());
+            }
+        }
+    }
+
+    @Override
+    public void put(LdapReplica.Entry entry) {
+        lock.writeLock().lock();
+        try {
+            LdapReplica.Entry previous = entries.put(entry.getNormalizedName(), entry);
+            if (previous != null) {
+                index(previous, false);
+            }
+            index(entry, true);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<LdapReplica.Entry> find(LdapFilter filter, Predicate<LdapReplica.Entry> scope) {
+        List<LdapReplica.Entry> result = new ArrayList<LdapReplica.Entry>();
+        lock.readLock().lock();
+        try {
+            Collection<LdapReplica.Entry> candidates = candidates(filter);
+            if (candidates == null) {
+                scanCount.incrementAndGet();
+                candidates = entries.values();
+            } else {
+                indexedCount.incrementAndGet();
+            }
+            for (LdapReplica.Entry entry : candidates) {
+                if (scope.test(entry) && filter.matches(entry)) {
+                    result.add(entry);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    long getIndexedCount() {
+        return indexedCount.get();
+    }
+
+    long getScanCount() {
+        return scanCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "entries="+size()+", indexed="+indexedCount.get()+", scans="+scanCount.get();
+    }
+
+    /**
+     * Returns the index key of a value: the normalized string, or the bytes
+     * of a binary value (which can not collide with a string key).
+     */
+    static String key(Object value) {
+        return value instanceof byte[]
+            ? "\u0000"+new String((byte[])value, StandardCharsets.ISO_8859_1)
+            : LdapFilter.normalizeValue(value.toString());
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private void index(LdapReplica.Entry entry, boolean add) {
+        for (Map.Entry<String,Map<String,Set<LdapReplica.Entry>>> index : equalityIndexes.entrySet()) {
+            List<Object> values = entry.get(index.getKey());
+            if (values != null) {
+                for (Object value : values) {
+                    update(index.getValue(), key(value), entry, add);
+                }
+            }
+        }
+        for (Map.Entry<String,NavigableMap<String,Set<LdapReplica.Entry>>> index : prefixIndexes.entrySet()) {
+            List<Object> values = entry.get(index.getKey());
+            if (values != null) {
+                for (Object value : values) {
+                    // Substrings of binary values never match, so they are not indexed
+                    if (!(value instanceof byte[])) {
+                        update(index.getValue(), key(value), entry, add);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void update(Map<String,Set<LdapReplica.Entry>> index, String key, LdapReplica.Entry entry,
+        boolean add
+    ) {
+        Set<LdapReplica.Entry> bucket = index.get(key);
+        if (add) {
+            if (bucket == null) {
+                bucket = new HashSet<LdapReplica.Entry>(2);
+                index.put(key, bucket);
+            }
+            bucket.add(entry);
+        } else if (bucket != null) {
+            bucket.remove(entry);
+            if (bucket.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Returns the entries that may match the filter according to the
+     * indexes, or null when the filter has no indexed term.
+     */
+    private Collection<LdapReplica.Entry> candidates(LdapFilter filter) {
+        if (filter instanceof LdapFilter.Item) {
+            return candidates((LdapFilter.Item)filter);
+        } else if (filter instanceof LdapFilter.Composite && ((LdapFilter.Composite)filter).isAnd()) {
+            // Any indexed term of an AND bounds the result, so use the smallest
+            Collection<LdapReplica.Entry> best = null;
+            for (LdapFilter child : ((LdapFilter.Composite)filter).getChildren()) {
+                Collection<LdapReplica.Entry> candidates = candidates(child);
+                if (candidates != null && (best == null || candidates.size() < best.size())) {
+                    best = candidates;
+                    if (best.isEmpty()) {
+                        break;
+                    }
+                }
+            }
+            return best;
+        } else if (filter instanceof LdapFilter.Composite) {
+            // An OR is only bounded when every one of its terms is indexed
+            Set<LdapReplica.Entry> union = new HashSet<LdapReplica.Entry>();
+            for (LdapFilter child : ((LdapFilter.Composite)filter).getChildren()) {
+                Collection<LdapReplica.Entry> candidates = candidates(child);
+                if (candidates == null) {
+                    return null;
+                }
+                union.addAll(candidates);
+            }
+            return union;
+        }
+        return null;
+    }
+
+    private Collection<LdapReplica.Entry> candidates(LdapFilter.Item item) {
+        String attribute = item.getAttribute();
+        // Active Directory matches objectCategory names against DN values
+        if (!LdapFilter.Item.EQUAL.equals(item.getOperator()) || item.isPresence()
+            || "objectcategory".equals(attribute)) {
+            return null;
+        }
+        if (item.isEquality()) {
+            Map<String,Set<LdapReplica.Entry>> index = equalityIndexes.get(attribute);
+            if (index == null) {
+                index = prefixIndexes.get(attribute);
+            }
+            if (index == null) {
+                return null;
+            }
+            // The value may be compared as a string or as binary
+            byte[] assertion = LdapFilter.unescape(item.getValue());
+            Set<LdapReplica.Entry> stringMatches = index.get(key(new String(assertion, StandardCharsets.UTF_8)));
+            Set<LdapReplica.Entry> binaryMatches = index.get(key(assertion));
+            if (binaryMatches == null) {
+                return stringMatches == null ? Collections.<LdapReplica.Entry>emptySet() : stringMatches;
+            } else if (stringMatches == null) {
+                return binaryMatches;
+            }
+            Set<LdapReplica.Entry> union = new HashSet<LdapReplica.Entry>(stringMatches);
+            union.addAll(binaryMatches);
+            return union;
+        }
+        NavigableMap<String,Set<LdapReplica.Entry>> index = prefixIndexes.get(attribute);
+        String initial = item.substrings()[0];
+        if (index == null || initial.isEmpty()) {
+            return null;
+        }
+        Set<LdapReplica.Entry> result = new HashSet<LdapReplica.Entry>();
+        for (Set<LdapReplica.Entry> bucket : index.subMap(initial, true, initial+Character.MAX_VALUE, false).values()) {
+            result.addAll(bucket);
+        }
+        return result;
+    }
+}
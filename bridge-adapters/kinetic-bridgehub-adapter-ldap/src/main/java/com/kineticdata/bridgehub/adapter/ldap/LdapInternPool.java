@@ -0,0 +1,78 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of shared string values, so equal values read from many
+ * entries (the same memberOf DNs, departments or OU paths) are held once.
+ *
+ * The pool is a fixed size table indexed by the hash of the value.  A value
+ * that is not in its slot replaces the value there, so the pool never grows
+ * and the values seen most recently are the ones shared.  Lookups do not
+ * lock: a lost race only means a value is not shared.
+ */
+class LdapInternPool {
+
+    /** Pool that shares nothing. */
+    static final LdapInternPool NONE = new LdapInternPool(0);
+
+    private final String[] table;
+    private final int mask;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * @param capacity the number of values held, rounded up to a power of
+     *   two (0 to share nothing)
+     */
+    LdapInternPool(int capacity) {
+        int size = capacity <= 0 ? 0 : Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.table = size == 0 ? null : new String[Math.max(2, size)];
+        this.mask = table == null ? 0 : table.length - 1;
+    }
+
+    /**
+     * Returns the pooled value equal to the value, pooling the value when
+     * there is none.
+     */
+    String intern(String value) {
+        if (table == null || value == null) {
+            return value;
+        }
+        int hash = value.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        String pooled = table[slot];
+        if (pooled != null && pooled.equals(value)) {
+            hitCount.increment();
+            return pooled;
+        }
+        missCount.increment();
+        table[slot] = value;
+        return value;
+    }
+
+    /**
+     * Interns string values, returning other values as is.
+     */
+    Object intern(Object value) {
+        return value instanceof String ? intern((String)value) : value;
+    }
+
+    int getCapacity() {
+        return table == null ? 0 : table.length;
+    }
+
+    long getHitCount() {
+        return hitCount.sum();
+    }
+
+    long getMissCount() {
+        return missCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "capacity="+getCapacity()+", hits="+hitCount.sum()+", misses="+missCount.sum();
+    }
+}
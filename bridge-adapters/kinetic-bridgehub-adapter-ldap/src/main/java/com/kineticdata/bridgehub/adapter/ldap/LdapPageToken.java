@@ -0,0 +1,88 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Page token handed to bridge callers for token based pagination.
+ *
+ * The token carries the paged results cookie returned by the server, the id
+ * of the parked connection the paged search is bound to, and a fingerprint of
+ * the search so a token can not be replayed against a different query.
+ */
+class LdapPageToken {
+
+    private static final String SEPARATOR = ".";
+
+    private final String parkId;
+    private final String fingerprint;
+    private final byte[] cookie;
+
+    LdapPageToken(String parkId, String fingerprint, byte[] cookie) {
+        this.parkId = parkId;
+        this.fingerprint = fingerprint;
+        this.cookie = cookie;
+    }
+
+    String getParkId() {
+        return parkId;
+    }
+
+    String getFingerprint() {
+        return fingerprint;
+    }
+
+    byte[] getCookie() {
+        return cookie;
+    }
+
+    /**
+     * Parses a token produced by {@link #toString()}.
+     *
+     * @param token
+     * @return
+     * @throws BridgeError if the token is malformed
+     */
+    static LdapPageToken parse(String token) throws BridgeError {
+        String[] parts = token == null ? new String[0] : token.split("\\.", -1);
+        if (parts.length != 3 || parts[1].isEmpty() || parts[2].isEmpty()) {
+            throw new BridgeError("Invalid page token: "+token);
+        }
+        try {
+            return new LdapPageToken(
+                parts[0].isEmpty() ? null : parts[0],
+                parts[1],
+                Base64.getUrlDecoder().decode(parts[2]));
+        } catch (IllegalArgumentException e) {
+            throw new BridgeError("Invalid page token: "+token, e);
+        }
+    }
+
+    /**
+     * Builds the fingerprint identifying a search.
+     *
+     * @param searchBase
+     * @param filter
+     * @param fields
+     * @return
+     */
+    static String fingerprint(String searchBase, String filter, List<String> fields) {
+        String search = searchBase+"\u0000"+filter+"\u0000"+String.join(",", fields);
+        byte[] bytes = search.getBytes(StandardCharsets.UTF_8);
+        // 64 bit FNV-1a hash of the search
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        return Long.toHexString(hash);
+    }
+
+    @Override
+    public String toString() {
+        return (parkId == null ? "" : parkId)+SEPARATOR+fingerprint+SEPARATOR
+            +Base64.getUrlEncoder().withoutPadding().encodeToString(cookie);
+    }
+}
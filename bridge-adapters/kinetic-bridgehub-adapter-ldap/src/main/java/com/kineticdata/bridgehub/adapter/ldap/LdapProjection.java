@@ -0,0 +1,146 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.SearchResult;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compiled plan for turning search results into record maps for a specific
+ * structure and list of fields.
+ *
+ * The plan resolves the syntax and converter of every column once and keeps
+ * the returning attributes array, so converting an entry is a single walk
+ * over the attributes the server returned.
+ */
+class LdapProjection {
+
+    /** Defines the logger */
+    protected static final org.slf4j.Logger logger = LoggerFactory.getLogger(LdapProjection.class);
+
+    /** Resolves the syntax OID of an attribute. */
+    interface SyntaxResolver {
+        String resolve(String attribute) throws BridgeError;
+    }
+
+    private final List<String> fields;
+    private final String[] names;
+    private final String[] returningAttributes;
+    private final LdapSyntaxConverters.Converter[] converters;
+    // Lower cased attribute name to the columns that request it
+    private final Map<String,int[]> columns;
+    private final boolean complete;
+
+    private LdapProjection(List<String> fields, LdapSyntaxConverters.Converter[] converters, boolean complete) {
+        this.fields = Collections.unmodifiableList(fields);
+        this.names = fields.toArray(new String[fields.size()]);
+        this.returningAttributes = names.clone();
+        this.converters = converters;
+        this.complete = complete;
+
+        Map<String,int[]> columnMap = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            String key = names[i].toLowerCase(Locale.ROOT);
+            int[] existing = columnMap.get(key);
+            int[] indexes = existing == null ? new int[1] : Arrays.copyOf(existing, existing.length + 1);
+            indexes[indexes.length - 1] = i;
+            columnMap.put(key, indexes);
+        }
+        this.columns = columnMap;
+    }
+
+    /**
+     * Compiles the plan for the fields, resolving the converter of each column.
+     * Columns whose syntax can not be resolved use the default converter and
+     * the plan is marked incomplete so it is not cached.
+     *
+     * @param fields
+     * @param resolver
+     * @return
+     */
+    static LdapProjection compile(List<String> fields, SyntaxResolver resolver) {
+        LdapSyntaxConverters.Converter[] converters = new LdapSyntaxConverters.Converter[fields.size()];
+        boolean complete = true;
+        for (int i = 0; i < converters.length; i++) {
+            String name = fields.get(i);
+            String syntax = null;
+            try {
+                syntax = resolver.resolve(name);
+            } catch (BridgeError e) {
+                logger.debug("Unable to resolve the syntax of "+name+": "+e.getMessage());
+                complete = false;
+            }
+            converters[i] = LdapSyntaxConverters.DEFAULT.get(name, syntax);
+        }
+        return new LdapProjection(new ArrayList<>(fields), converters, complete);
+    }
+
+    /**
+     * Builds the cache key of the plan for a structure and list of fields.
+     */
+    static String key(String structure, List<String> fields) {
+        return (structure == null ? "" : structure.toLowerCase(Locale.ROOT))+"\u0000"+String.join(",", fields);
+    }
+
+    List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Returns the attributes to request from the server.  The array is shared
+     * and must not be modified.
+     */
+    String[] getReturningAttributes() {
+        return returningAttributes;
+    }
+
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Converts the search result into a record map with a value (or null) for
+     * each field, in field order.
+     *
+     * @param entry
+     * @return
+     * @throws BridgeError
+     * @throws NamingException
+     */
+    Map<String,Object> project(SearchResult entry) throws BridgeError, NamingException {
+        return project(entry.getAttributes());
+    }
+
+    Map<String,Object> project(Attributes attributes) throws BridgeError, NamingException {
+        String[] values = new String[names.length];
+
+        // Walk the returned attributes once, placing each in its columns
+        NamingEnumeration<? extends Attribute> all = attributes.getAll();
+        while (all.hasMore()) {
+            Attribute attribute = all.next();
+            int[] indexes = columns.get(attribute.getID().toLowerCase(Locale.ROOT));
+            if (indexes != null) {
+                for (int index : indexes) {
+                    values[index] = LdapSyntaxConverters.convert(converters[index], attribute);
+                }
+            }
+        }
+
+        Map<String,Object> result = new LinkedHashMap<>(names.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            result.put(names[i], values[i]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,233 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+
+/**
+ * Query template compiled once into literal segments and parameter slots.
+ *
+ * A query is made of an optional search base addition and a filter, the
+ * filter being everything from the first '(' to the last ')'.  When both of
+ * those parentheses are literal text of the template, the template is split
+ * when it is compiled: the search base addition is constant and only the
+ * filter has parameters substituted.  Otherwise the parameters are
+ * substituted first and the result is split around the parentheses.
+ */
+class LdapQueryTemplate {
+
+    /** Matches the parameter references, as in <%=parameter["Name"]%>. */
+    private static final Pattern PARAMETER_PATTERN = Pattern.compile("<%=\\s*parameter\\[\\\"(.*?)\\\"\\]\\s*%>");
+    /** Matches the filter of a query that spans several lines. */
+    private static final Pattern FILTER_PATTERN = Pattern.compile("\\(.*\\)");
+
+    private static final LdapQualificationParser ENCODER = new LdapQualificationParser();
+
+    private final String template;
+    // The literal segments around the parameter slots of the whole template
+    private final Segments query;
+    // The filter segments and constant base addition of a pre-split template
+    private final Segments filter;
+    private final String baseAddition;
+
+    private LdapQueryTemplate(String template, Segments query, Segments filter, String baseAddition) {
+        this.template = template;
+        this.query = query;
+        this.filter = filter;
+        this.baseAddition = baseAddition;
+    }
+
+    /**
+     * Compiles the query template.
+     *
+     * @param template
+     * @return
+     */
+    static LdapQueryTemplate compile(String template) {
+        String source = template == null ? "" : template;
+        Segments query = Segments.parse(source);
+
+        // Split the template up front when the first '(' and the last ')' are
+        // literal text with no parameter before or after them respectively
+        String first = query.literals[0];
+        String last = query.literals[query.literals.length - 1];
+        int open = first.indexOf('(');
+        int close = last.lastIndexOf(')');
+        if (open >= 0 && close >= 0 && source.indexOf('\n') < 0 && source.indexOf('\r') < 0
+            && (query.names.length > 0 || close > open)
+        ) {
+            int closeIndex = source.length() - last.length() + close;
+            return new LdapQueryTemplate(source, query,
+                Segments.parse(source.substring(open, closeIndex + 1)),
+                first.substring(0, open) + last.substring(close + 1));
+        }
+        return new LdapQueryTemplate(source, query, null, null);
+    }
+
+    String getTemplate() {
+        return template;
+    }
+
+    /**
+     * Returns true if the search base addition was split from the filter when
+     * the template was compiled.
+     */
+    boolean isPreSplit() {
+        return filter != null;
+    }
+
+    /**
+     * Returns the text outside of the filter, which is added to the bridge
+     * search base (may be blank).
+     *
+     * @param parameters
+     * @return
+     * @throws BridgeError if a referenced parameter was not provided
+     */
+    String buildBaseAddition(Map<String,String> parameters) throws BridgeError {
+        if (filter != null && !hasLineBreaks(parameters)) {
+            query.validate(parameters);
+            return baseAddition;
+        }
+        String parsed = query.render(parameters);
+        if (hasLineBreaks(parsed)) {
+            return FILTER_PATTERN.matcher(parsed).replaceAll("");
+        }
+        int open = parsed.indexOf('(');
+        int close = parsed.lastIndexOf(')');
+        return open >= 0 && close > open
+            ? parsed.substring(0, open) + parsed.substring(close + 1)
+            : parsed;
+    }
+
+    /**
+     * Returns the filter, from the first '(' to the last ')' of the query with
+     * the parameters substituted, or an empty string if there is none.
+     *
+     * @param parameters
+     * @return
+     * @throws BridgeError if a referenced parameter was not provided
+     */
+    String buildFilter(Map<String,String> parameters) throws BridgeError {
+        if (filter != null && !hasLineBreaks(parameters)) {
+            return filter.render(parameters);
+        }
+        String parsed = query.render(parameters);
+        if (hasLineBreaks(parsed)) {
+            Matcher matcher = FILTER_PATTERN.matcher(parsed);
+            return matcher.find() ? matcher.group() : "";
+        }
+        int open = parsed.indexOf('(');
+        int close = parsed.lastIndexOf(')');
+        return open >= 0 && close > open ? parsed.substring(open, close + 1) : "";
+    }
+
+    /**
+     * Returns true if the query addresses a single entry by its name: it has
+     * no filter and the search base addition is a distinguished name (such as
+     * "uid=555" or "CN=Mary Olowu,OU=Users").
+     *
+     * @param parameters
+     * @return
+     * @throws BridgeError if a referenced parameter was not provided
+     */
+    boolean isEntryAddressed(Map<String,String> parameters) throws BridgeError {
+        if (!buildFilter(parameters).trim().isEmpty()) {
+            return false;
+        }
+        String baseAddition = buildBaseAddition(parameters).trim();
+        if (baseAddition.isEmpty() || baseAddition.indexOf('=') < 0) {
+            return false;
+        }
+        try {
+            new LdapName(baseAddition);
+            return true;
+        } catch (InvalidNameException e) {
+            return false;
+        }
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    // Line breaks end the regular expression match of the original parser, so
+    // queries containing them are split with the regular expression
+    private static boolean hasLineBreaks(String value) {
+        return value != null && (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0);
+    }
+
+    private boolean hasLineBreaks(Map<String,String> parameters) {
+        if (parameters != null) {
+            for (String name : query.names) {
+                if (hasLineBreaks(parameters.get(name))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Internal class holding literal segments and the parameter names between
+     * them; there is always one more literal than there are names.
+     */
+    private static class Segments {
+        private final String[] literals;
+        private final String[] names;
+        private final int literalLength;
+
+        Segments(String[] literals, String[] names) {
+            this.literals = literals;
+            this.names = names;
+            int length = 0;
+            for (String literal : literals) {
+                length += literal.length();
+            }
+            this.literalLength = length;
+        }
+
+        static Segments parse(String source) {
+            List<String> literals = new ArrayList<String>();
+            List<String> names = new ArrayList<String>();
+            Matcher matcher = PARAMETER_PATTERN.matcher(source);
+            int position = 0;
+            while (matcher.find()) {
+                literals.add(source.substring(position, matcher.start()));
+                names.add(matcher.group(1));
+                position = matcher.end();
+            }
+            literals.add(source.substring(position));
+            return new Segments(literals.toArray(new String[literals.size()]), names.toArray(new String[names.size()]));
+        }
+
+        void validate(Map<String,String> parameters) throws BridgeError {
+            for (String name : names) {
+                if (parameters == null || !parameters.containsKey(name)) {
+                    throw new BridgeError("Unable to parse qualification, the '"+name+
+                        "' parameter was referenced but not provided.");
+                }
+            }
+        }
+
+        String render(Map<String,String> parameters) throws BridgeError {
+            if (names.length == 0) {
+                return literals[0];
+            }
+            validate(parameters);
+            StringBuilder builder = new StringBuilder(literalLength + names.length * 16);
+            for (int i = 0; i < names.length; i++) {
+                builder.append(literals[i]);
+                String value = parameters.get(names[i]);
+                builder.append(value == null ? "" : ENCODER.encodeParameter(names[i], value));
+            }
+            builder.append(literals[names.length]);
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.Record;
+
+/**
+ * Receives the records of a streamed search one at a time.
+ *
+ * @see LdapAdapter#search(com.kineticdata.bridgehub.adapter.BridgeRequest, LdapRecordHandler)
+ */
+public interface LdapRecordHandler {
+    void handle(Record record) throws BridgeError;
+}
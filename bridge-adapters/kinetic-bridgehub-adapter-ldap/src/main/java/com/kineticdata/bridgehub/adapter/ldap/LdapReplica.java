@@ -0,0 +1,460 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory mirror of the entries of selected structures, so counts,
+ * retrieves and searches of those structures are answered without querying
+ * the directory.
+ *
+ * Each structure is loaded with a full paged search of the search bases and
+ * then kept current by polling for entries changed since the last poll: by
+ * uSNChanged when every request goes to the same server (update sequence
+ * numbers are local to each domain controller), and by modifyTimestamp
+ * otherwise.  Polling does not see deleted or moved entries, so every
+ * structure is also fully reloaded at the reload interval.  A structure is
+ * not used until its first load completed.  The entries of each structure
+ * are held by an entry store, which selects the entries a filter is
+ * evaluated against.
+ */
+class LdapReplica {
+
+    /** Defines the logger */
+    protected static final org.slf4j.Logger logger = LoggerFactory.getLogger(LdapReplica.class);
+
+    static final String USN_CHANGED = "uSNChanged";
+    static final String MODIFY_TIMESTAMP = "modifyTimestamp";
+    // Attributes filters commonly test that are not part of the structure fields
+    private static final String[] EXTRA_ATTRIBUTES = {"objectClass", "objectCategory"};
+
+    /** Reads the entries to replicate from the directory. */
+    interface Source {
+        /**
+         * Returns the attributes replicated for the structure.
+         */
+        List<String> getFields(String structure) throws BridgeError;
+
+        /**
+         * Runs a paged subtree search of the base, handing every entry to the
+         * handler.  The search may be retried, handing entries out again.
+         */
+        void search(String base, String filter, String[] attributes, EntryHandler handler) throws BridgeError;
+    }
+
+    /** Receives the entries read by a search. */
+    interface EntryHandler {
+        void handle(String name, Attributes attributes) throws NamingException;
+    }
+
+    private final Source source;
+    private final Supplier<LdapEntryStore> storeFactory;
+    private final LdapInternPool pool;
+    private final List<String> bases;
+    private final List<String> normalizedBases = new ArrayList<String>();
+    private final boolean usnPolling;
+    private final long pollIntervalMillis;
+    private final long reloadIntervalMillis;
+    // Lower cased structure name to its mirror
+    private final Map<String,Mirror> mirrors;
+    private ScheduledExecutorService executor;
+
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong pollCount = new AtomicLong();
+    private final AtomicLong changeCount = new AtomicLong();
+
+    /**
+     * @param source
+     * @param storeFactory creates the empty store of a structure load
+     * @param pool shares the values repeated across entries
+     * @param structures the structures to replicate
+     * @param bases the search bases, none nested in another
+     * @param usnPolling true to poll by uSNChanged, false to poll by modifyTimestamp
+     * @param pollIntervalMillis time between polls (0 to only reload)
+     * @param reloadIntervalMillis time between full reloads (0 to never reload)
+     */
+    LdapReplica(Source source, Supplier<LdapEntryStore> storeFactory, LdapInternPool pool, List<String> structures,
+        List<String> bases, boolean usnPolling, long pollIntervalMillis, long reloadIntervalMillis
+    ) {
+        this.source = source;
+        this.storeFactory = storeFactory;
+        this.pool = pool;
+        this.bases = Collections.unmodifiableList(new ArrayList<String>(bases));
+        for (String base : bases) {
+            normalizedBases.add(LdapTtlCache.normalizeDn(base));
+        }
+        this.usnPolling = usnPolling;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.reloadIntervalMillis = reloadIntervalMillis;
+        Map<String,Mirror> structureMirrors = new LinkedHashMap<String,Mirror>();
+        for (String structure : structures) {
+            if (!structure.trim().isEmpty()) {
+                structureMirrors.put(structure.trim().toLowerCase(Locale.ROOT),
+                    new Mirror(structure.trim(), storeFactory.get()));
+            }
+        }
+        this.mirrors = Collections.unmodifiableMap(structureMirrors);
+    }
+
+    /**
+     * Starts loading the structures on a background thread, then keeps them
+     * current at the poll interval.
+     */
+    synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ldap-replica");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = pollIntervalMillis > 0 ? pollIntervalMillis : reloadIntervalMillis;
+        if (interval > 0) {
+            executor.scheduleWithFixedDelay(this::synchronize, 0, interval, TimeUnit.MILLISECONDS);
+        } else {
+            executor.execute(this::synchronize);
+        }
+    }
+
+    /**
+     * Stops the background synchronization.
+     */
+    synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Loads the structures that were not loaded yet or are due for a reload,
+     * and polls the others for changes.  Failures are logged and retried at
+     * the next interval, the mirror keeps serving what it holds.
+     */
+    void synchronize() {
+        for (Mirror mirror : mirrors.values()) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            try {
+                if (!mirror.ready || (reloadIntervalMillis > 0 && System.currentTimeMillis() >= mirror.nextReload)) {
+                    load(mirror);
+                } else if (pollIntervalMillis > 0) {
+                    poll(mirror);
+                }
+            } catch (BridgeError | RuntimeException e) {
+                logger.warn("Unable to synchronize the "+mirror.structure+" replica: "+e.getMessage());
+            }
+        }
+    }
+
+    boolean isReady(String structure) {
+        Mirror mirror = structure == null ? null : mirrors.get(structure.toLowerCase(Locale.ROOT));
+        return mirror != null && mirror.ready;
+    }
+
+    /**
+     * Returns the replicated entries of the structure under the search bases
+     * that match the filter, or null when the replica can not answer: the
+     * structure is not replicated or not loaded yet, a field or filter
+     * attribute is not replicated, or a base is outside the replicated bases.
+     *
+     * @param structure
+     * @param searchBases the bases to search
+     * @param baseObject true to only match the entries named by the bases
+     * @param filter
+     * @param fields the fields the caller will read from the entries
+     * @return the matching entries, or null
+     */
+    List<Entry> find(String structure, List<String> searchBases, boolean baseObject, LdapFilter filter,
+        Collection<String> fields
+    ) {
+        Mirror mirror = structure == null ? null : mirrors.get(structure.toLowerCase(Locale.ROOT));
+        if (mirror == null || !mirror.ready) {
+            return null;
+        }
+        Set<String> attributes = mirror.attributes;
+        for (String field : fields) {
+            if (!attributes.contains(field.toLowerCase(Locale.ROOT))) {
+                return null;
+            }
+        }
+        if (!filter.isEvaluable(attributes)) {
+            return null;
+        }
+        List<String> scopes = new ArrayList<String>();
+        for (String base : searchBases) {
+            String scope = LdapTtlCache.normalizeDn(base);
+            if (!isReplicated(scope)) {
+                return null;
+            }
+            scopes.add(scope);
+        }
+
+        return mirror.store.find(filter, entry -> isInScope(entry.normalizedName, scopes, baseObject));
+    }
+
+    int size(String structure) {
+        Mirror mirror = structure == null ? null : mirrors.get(structure.toLowerCase(Locale.ROOT));
+        return mirror == null ? 0 : mirror.store.size();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Mirror mirror : mirrors.values()) {
+            builder.append(mirror.structure).append(": ").append(mirror.ready ? mirror.store : "loading").append(", ");
+        }
+        return builder.append("loads=").append(loadCount.get()).append(", polls=").append(pollCount.get())
+            .append(", changes=").append(changeCount.get()).toString();
+    }
+
+    /**
+     * Returns true if the normalized name is one of the normalized bases or
+     * is under one of them.
+     */
+    static boolean isInScope(String name, List<String> scopes, boolean baseObject) {
+        for (String scope : scopes) {
+            if (name.equals(scope)) {
+                return true;
+            }
+            // The separating comma must not be an escaped comma of the value
+            if (!baseObject && name.length() > scope.length() + 1 && name.endsWith(scope)
+                && name.charAt(name.length() - scope.length() - 1) == ','
+                && name.charAt(name.length() - scope.length() - 2) != '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private boolean isReplicated(String scope) {
+        return isInScope(scope, normalizedBases, false);
+    }
+
+    /**
+     * Reads every entry of the structure and replaces the mirror with them.
+     */
+    private void load(Mirror mirror) throws BridgeError {
+        long start = System.currentTimeMillis();
+        Set<String> attributes = new HashSet<String>();
+        List<String> requested = new ArrayList<String>(source.getFields(mirror.structure));
+        Collections.addAll(requested, EXTRA_ATTRIBUTES);
+        for (String attribute : requested) {
+            attributes.add(attribute.toLowerCase(Locale.ROOT));
+        }
+        requested.add(USN_CHANGED);
+        requested.add(MODIFY_TIMESTAMP);
+
+        LdapEntryStore store = storeFactory.get();
+        Watermark watermark = new Watermark();
+        String[] requestedArray = requested.toArray(new String[requested.size()]);
+        for (String base : bases) {
+            source.search(base, "(objectClass="+mirror.structure+")", requestedArray, (name, values) -> {
+                Entry entry = new Entry(name, values, mirror.columns, pool);
+                store.put(entry);
+                watermark.update(entry);
+            });
+        }
+
+        // Swap in the loaded entries, requests keep reading the previous ones
+        mirror.attributes = Collections.unmodifiableSet(attributes);
+        mirror.requested = requestedArray;
+        mirror.store = store;
+        mirror.watermark = watermark;
+        mirror.nextReload = System.currentTimeMillis() + reloadIntervalMillis;
+        mirror.ready = true;
+        loadCount.incrementAndGet();
+        logger.info("Loaded "+store.size()+" "+mirror.structure+" entries into the replica in "+
+            (System.currentTimeMillis() - start)+"ms.");
+    }
+
+    /**
+     * Reads the entries of the structure changed since the last load or poll
+     * and replaces them in the mirror.
+     */
+    private void poll(Mirror mirror) throws BridgeError {
+        Watermark watermark = mirror.watermark;
+        String changedSince = usnPolling ? watermark.nextUsn() : watermark.timestamp;
+        if (changedSince == null) {
+            // The entries carry no change marker, so only reloads update them
+            return;
+        }
+        String filter = "(&(objectClass="+mirror.structure+")("+
+            (usnPolling ? USN_CHANGED : MODIFY_TIMESTAMP)+">="+changedSince+"))";
+        // Timestamp polls are inclusive, so the entries changed during the
+        // last second seen are read again (replacing them is harmless)
+        LdapEntryStore store = mirror.store;
+        long[] changes = new long[1];
+        for (String base : bases) {
+            source.search(base, filter, mirror.requested, (name, values) -> {
+                Entry entry = new Entry(name, values, mirror.columns, pool);
+                store.put(entry);
+                watermark.update(entry);
+                changes[0]++;
+            });
+        }
+        pollCount.incrementAndGet();
+        changeCount.addAndGet(changes[0]);
+        if (changes[0] > 0) {
+            logger.debug("Applied "+changes[0]+" changed "+mirror.structure+" entries to the replica.");
+        }
+    }
+
+    /**
+     * A replicated entry: its name and its attribute values (String or
+     * byte[]).  The values are held in an array indexed by the columns shared
+     * by the entries of the structure, a single value as is and multiple
+     * values as an array, string values being shared through the intern pool.
+     */
+    static class Entry implements LdapFilter.Values {
+        private final String name;
+        private final String normalizedName;
+        private final LdapColumns columns;
+        private final Object[] values;
+
+        Entry(String name, Attributes attributes, LdapColumns columns, LdapInternPool pool) throws NamingException {
+            this.name = name;
+            this.normalizedName = LdapTtlCache.normalizeDn(name);
+            this.columns = columns;
+            List<Integer> indexes = new ArrayList<Integer>(attributes.size());
+            List<Object> slots = new ArrayList<Object>(attributes.size());
+            int length = 0;
+            NamingEnumeration<? extends Attribute> all = attributes.getAll();
+            while (all.hasMore()) {
+                Attribute attribute = all.next();
+                Object[] attributeValues = new Object[attribute.size()];
+                NamingEnumeration<?> enumeration = attribute.getAll();
+                for (int i = 0; i < attributeValues.length && enumeration.hasMore(); i++) {
+                    attributeValues[i] = pool.intern(enumeration.next());
+                }
+                if (attributeValues.length == 0) {
+                    continue;
+                }
+                int index = columns.add(attribute.getID().toLowerCase(Locale.ROOT));
+                indexes.add(index);
+                slots.add(attributeValues.length == 1 ? attributeValues[0] : attributeValues);
+                length = Math.max(length, index + 1);
+            }
+            this.values = new Object[length];
+            for (int i = 0; i < indexes.size(); i++) {
+                values[indexes.get(i)] = slots.get(i);
+            }
+        }
+
+        String getName() {
+            return name;
+        }
+
+        String getNormalizedName() {
+            return normalizedName;
+        }
+
+        @Override
+        public List<Object> get(String attribute) {
+            int index = columns.indexOf(attribute);
+            Object value = index < 0 || index >= values.length ? null : values[index];
+            if (value == null) {
+                return null;
+            }
+            return value instanceof Object[] ? Arrays.asList((Object[])value) : Collections.singletonList(value);
+        }
+
+        /**
+         * Returns the attributes of the entry, as a search would return them.
+         */
+        Attributes toAttributes() {
+            Attributes result = new BasicAttributes(true);
+            for (int index = 0; index < values.length; index++) {
+                if (values[index] != null) {
+                    BasicAttribute attribute = new BasicAttribute(columns.getName(index));
+                    for (Object value : values[index] instanceof Object[]
+                        ? (Object[])values[index] : new Object[]{values[index]}) {
+                        attribute.add(value);
+                    }
+                    result.put(attribute);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Internal class holding the replicated entries of a structure.
+     */
+    private static class Mirror {
+        private final String structure;
+        // Columns of the entries, shared by every load of the structure
+        private final LdapColumns columns = new LdapColumns();
+        private volatile boolean ready = false;
+        private volatile LdapEntryStore store;
+        private volatile Set<String> attributes = Collections.emptySet();
+        private volatile String[] requested;
+        private volatile Watermark watermark = new Watermark();
+        private volatile long nextReload;
+
+        Mirror(String structure, LdapEntryStore store) {
+            this.structure = structure;
+            this.store = store;
+        }
+    }
+
+    /**
+     * Internal class tracking the most recent change seen by a structure.
+     */
+    private static class Watermark {
+        private long usn = -1;
+        private String timestamp;
+
+        void update(Entry entry) {
+            List<Object> usnValues = entry.get(USN_CHANGED.toLowerCase(Locale.ROOT));
+            if (usnValues != null && !usnValues.isEmpty()) {
+                try {
+                    usn = Math.max(usn, Long.parseLong(usnValues.get(0).toString().trim()));
+                } catch (NumberFormatException e) {
+                    // Not a number, so it can not be polled by
+                }
+            }
+            List<Object> timestampValues = entry.get(MODIFY_TIMESTAMP.toLowerCase(Locale.ROOT));
+            if (timestampValues != null && !timestampValues.isEmpty()) {
+                String value = timestampValues.get(0).toString();
+                if (timestamp == null || value.compareTo(timestamp) > 0) {
+                    timestamp = value;
+                }
+            }
+        }
+
+        /**
+         * Returns the first update sequence number not yet seen, or null when
+         * no entry had one.
+         */
+        String nextUsn() {
+            return usn < 0 ? null : String.valueOf(usn + 1);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * Shares one in-flight operation between concurrent identical requests.
+ *
+ * The first request for a key runs the operation; requests for the same key
+ * that arrive while it runs wait for it and receive a copy of its result (or
+ * its error).  Nothing is kept once the operation completes, so this is
+ * independent of any result caching.
+ *
+ * @param <V> the result type
+ */
+class LdapRequestCoalescer<V> {
+
+    /** Runs the shared operation. */
+    interface Operation<V> {
+        V execute() throws BridgeError;
+    }
+
+    private final UnaryOperator<V> copier;
+    private final ConcurrentHashMap<String,InFlight<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong executionCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /**
+     * @param copier returns a copy of a result that the caller may modify
+     */
+    LdapRequestCoalescer(UnaryOperator<V> copier) {
+        this.copier = copier;
+    }
+
+    /**
+     * Runs the operation, or waits for the identical operation already
+     * running for the key.
+     *
+     * @param key the normalized request
+     * @param operation
+     * @return the result, copied when it is shared with other requests
+     * @throws BridgeError
+     */
+    V execute(String key, Operation<V> operation) throws BridgeError {
+        InFlight<V> call = new InFlight<V>();
+        InFlight<V> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null && existing.join()) {
+            coalescedCount.incrementAndGet();
+            return copier.apply(await(existing.future));
+        }
+        if (existing != null) {
+            // The operation completed while joining it, so run a new one
+            return operation.execute();
+        }
+
+        executionCount.incrementAndGet();
+        V value;
+        try {
+            value = operation.execute();
+        } catch (BridgeError | RuntimeException e) {
+            inFlight.remove(key, call);
+            call.close();
+            call.future.completeExceptionally(e);
+            throw e;
+        }
+        // Stop accepting followers before handing out the result
+        inFlight.remove(key, call);
+        int followers = call.close();
+        call.future.complete(value);
+        // Followers copy the result, so the caller gets its own copy as well
+        return followers > 0 ? copier.apply(value) : value;
+    }
+
+    int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    long getExecutionCount() {
+        return executionCount.get();
+    }
+
+    long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "inFlight="+inFlight.size()+", executions="+executionCount.get()+", coalesced="+coalescedCount.get();
+    }
+
+    private V await(CompletableFuture<V> future) throws BridgeError {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BridgeError("Interrupted while waiting for an identical request.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof BridgeError) {
+                throw (BridgeError)cause;
+            }
+            throw new BridgeError("There was a problem executing the request: "+cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Internal class holding the result of an in-flight operation and the
+     * number of requests waiting for it.  Once closed no request may join.
+     */
+    private static class InFlight<V> {
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        // Number of followers, or -1 once closed
+        private final AtomicInteger followers = new AtomicInteger();
+
+        boolean join() {
+            while (true) {
+                int current = followers.get();
+                if (current < 0) {
+                    return false;
+                }
+                if (followers.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        int close() {
+            return followers.getAndSet(-1);
+        }
+    }
+}
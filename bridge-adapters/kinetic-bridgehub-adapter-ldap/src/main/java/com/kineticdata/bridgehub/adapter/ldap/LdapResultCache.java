@@ -0,0 +1,305 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of search and retrieve results bounded by their estimated size in
+ * memory rather than by their number.
+ *
+ * Each structure can have its own time to live.  Once a result expires it is
+ * still served for another time to live while a single background refresh
+ * reloads it; results older than that are reloaded by the request.  The
+ * least recently used results are evicted first.  Results are held in
+ * their compact column oriented form, with values shared through the intern
+ * pool, and callers always receive their own copy of a cached result.
+ */
+class LdapResultCache {
+
+    /** Defines the logger */
+    protected static final org.slf4j.Logger logger = LoggerFactory.getLogger(LdapResultCache.class);
+
+    /** Loads a result from the directory. */
+    interface Loader {
+        /**
+         * @return the result, or null when there is nothing to cache
+         */
+        RecordList load() throws BridgeError;
+    }
+
+    private final long maxBytes;
+    private final long defaultTtlMillis;
+    private final Map<String,Long> structureTtlMillis;
+    private final LdapInternPool pool;
+    // Kept in access order, so the first entry is the least recently used
+    private final LinkedHashMap<String,CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    private volatile ExecutorService refreshExecutor;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong staleHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * @param maxBytes maximum estimated size of the cached results
+     * @param defaultTtlMillis time to live of structures without their own
+     * @param structureTtlMillis time to live of each structure, keyed by case
+     *   insensitive structure name (0 to not cache the structure)
+     * @param pool shares the values repeated across cached results
+     */
+    LdapResultCache(long maxBytes, long defaultTtlMillis, Map<String,Long> structureTtlMillis, LdapInternPool pool) {
+        this.maxBytes = maxBytes;
+        this.pool = pool;
+        this.defaultTtlMillis = defaultTtlMillis;
+        Map<String,Long> ttls = new HashMap<String,Long>();
+        for (Map.Entry<String,Long> entry : structureTtlMillis.entrySet()) {
+            ttls.put(entry.getKey().trim().toLowerCase(Locale.ROOT), entry.getValue());
+        }
+        this.structureTtlMillis = Collections.unmodifiableMap(ttls);
+    }
+
+    /**
+     * Returns a copy of the cached result, loading it when it is not cached.
+     *
+     * @param key the normalized request
+     * @param structure the structure of the request, used to select the time to live
+     * @param loader
+     * @return a copy of the result, or null if the loader returned null
+     * @throws BridgeError
+     */
+    RecordList get(String key, String structure, Loader loader) throws BridgeError {
+        long ttl = getTtl(structure);
+        if (ttl <= 0) {
+            return loader.load();
+        }
+        CacheEntry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        long now = System.currentTimeMillis();
+        if (entry != null && now < entry.expiresAt) {
+            hitCount.incrementAndGet();
+            return entry.value.toRecordList();
+        }
+        // Serve the expired result while it is reloaded in the background
+        if (entry != null && now < entry.expiresAt + ttl) {
+            staleHitCount.incrementAndGet();
+            refresh(key, ttl, entry, loader);
+            return entry.value.toRecordList();
+        }
+        missCount.incrementAndGet();
+        RecordList value = loader.load();
+        if (value == null) {
+            return null;
+        }
+        // The cache holds its own compact copy, so the loaded result is the
+        // caller's copy
+        store(key, value, ttl);
+        return value;
+    }
+
+    /**
+     * Returns the time to live of the results of the structure.
+     */
+    long getTtl(String structure) {
+        Long ttl = structure == null ? null : structureTtlMillis.get(structure.toLowerCase(Locale.ROOT));
+        return ttl == null ? defaultTtlMillis : ttl;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    long getStaleHitCount() {
+        return staleHitCount.get();
+    }
+
+    long getMissCount() {
+        return missCount.get();
+    }
+
+    long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Stops the background refresh thread.
+     */
+    void close() {
+        ExecutorService executor = refreshExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "size="+entries.size()+", bytes="+bytes+", hits="+hitCount.get()+", staleHits="+staleHitCount.get()+
+            ", misses="+missCount.get()+", refreshes="+refreshCount.get()+", evictions="+evictionCount.get();
+    }
+
+    /**
+     * Parses a list of structure time to live values, such as
+     * "User=600, Group=60", into milliseconds keyed by structure.
+     *
+     * @param value the list, times in seconds
+     * @return
+     * @throws BridgeError if an item is not a structure name and a number
+     */
+    static Map<String,Long> parseTtls(String value) throws BridgeError {
+        Map<String,Long> ttls = new HashMap<String,Long>();
+        if (value == null) {
+            return ttls;
+        }
+        for (String item : value.split(",")) {
+            if (item.trim().isEmpty()) {
+                continue;
+            }
+            int separator = item.indexOf('=');
+            try {
+                if (separator < 1) {
+                    throw new NumberFormatException("missing '='");
+                }
+                ttls.put(item.substring(0, separator).trim(),
+                    Long.parseLong(item.substring(separator + 1).trim()) * 1000L);
+            } catch (NumberFormatException e) {
+                throw new BridgeError("Invalid structure time to live '"+item.trim()+"': "+e.getMessage(), e);
+            }
+        }
+        return ttls;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private void refresh(String key, long ttl, CacheEntry stale, Loader loader) {
+        // Only one refresh of an entry runs at a time
+        if (!stale.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            getRefreshExecutor().execute(() -> {
+                try {
+                    RecordList value = loader.load();
+                    if (value == null) {
+                        remove(key, stale);
+                    } else {
+                        store(key, value, ttl);
+                    }
+                    // Counted once the refreshed result is served
+                    refreshCount.incrementAndGet();
+                } catch (BridgeError | RuntimeException e) {
+                    // Keep serving the stale result until it is too old
+                    logger.warn("Unable to refresh the cached result: "+e.getMessage());
+                } finally {
+                    stale.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            stale.refreshing.set(false);
+        }
+    }
+
+    private ExecutorService getRefreshExecutor() {
+        ExecutorService executor = refreshExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                if (refreshExecutor == null) {
+                    refreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "ldap-result-cache-refresh");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+                executor = refreshExecutor;
+            }
+        }
+        return executor;
+    }
+
+    private void store(String key, RecordList value, long ttl) {
+        // Build the compact copy outside of the lock
+        store(key, LdapCompactRecordList.of(value, pool), ttl);
+    }
+
+    private synchronized void store(String key, LdapCompactRecordList value, long ttl) {
+        long size = value.getBytes();
+        CacheEntry previous = entries.remove(key);
+        if (previous != null) {
+            bytes -= previous.bytes;
+        }
+        // Results larger than the whole cache are not kept
+        if (size > maxBytes) {
+            return;
+        }
+        entries.put(key, new CacheEntry(value, size, System.currentTimeMillis() + ttl));
+        bytes += size;
+        // Evict the least recently used results while over the bound
+        Iterator<Map.Entry<String,CacheEntry>> iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String,CacheEntry> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            bytes -= eldest.getValue().bytes;
+            iterator.remove();
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    private synchronized void remove(String key, CacheEntry entry) {
+        if (entries.get(key) == entry) {
+            entries.remove(key);
+            bytes -= entry.bytes;
+        }
+    }
+
+    /**
+     * Internal class holding the compact form of a cached result, its
+     * estimated size and its expiration time.
+     */
+    private static class CacheEntry {
+        private final LdapCompactRecordList value;
+        private final long bytes;
+        private final long expiresAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        CacheEntry(LdapCompactRecordList value, long bytes, long expiresAt) {
+            this.value = value;
+            this.bytes = bytes;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Concurrent cache of schema definitions (attribute syntaxes and structure
+ * fields) keyed by case insensitive name.
+ *
+ * Concurrent misses on the same key share a single load.  When a time to
+ * live is configured, expired values keep being served while a background
+ * thread reloads them, so a schema change is picked up without making a
+ * request wait on the directory.  The number of entries is bounded; the
+ * oldest entries are evicted first.
+ *
+ * @param <V> the cached value type
+ */
+class LdapSchemaCache<V> {
+
+    /** Defines the logger */
+    protected static final org.slf4j.Logger logger = LoggerFactory.getLogger(LdapSchemaCache.class);
+
+    /** Loads the value of a key from the directory. */
+    interface Loader<V> {
+        V load(String key) throws BridgeError;
+    }
+
+    private final String name;
+    private final long ttlMillis;
+    private final int maxSize;
+    private final Loader<V> refreshLoader;
+    private final Runnable changeListener;
+    private final ConcurrentHashMap<String,CacheEntry<V>> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String,CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    private volatile ExecutorService refreshExecutor;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong loadFailureCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * @param name name of the cache, used in log messages
+     * @param ttlMillis time after which a value is refreshed, 0 to never expire
+     * @param maxSize maximum number of entries
+     * @param refreshLoader loader used by the background refresh, may be null
+     *   to reload expired values in the requesting thread instead
+     * @param changeListener called after a refresh changed a value, may be null
+     */
+    LdapSchemaCache(String name, long ttlMillis, int maxSize, Loader<V> refreshLoader, Runnable changeListener) {
+        this.name = name;
+        this.ttlMillis = ttlMillis;
+        this.maxSize = Math.max(1, maxSize);
+        this.refreshLoader = refreshLoader;
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Returns the cached value, loading it with the loader on a miss.  Only
+     * one thread loads a given key at a time; other threads asking for the
+     * same key wait for its result.
+     *
+     * @param key
+     * @param loader loads the value in the calling thread
+     * @return
+     * @throws BridgeError if the load failed
+     */
+    V get(String key, Loader<V> loader) throws BridgeError {
+        String normalizedKey = normalize(key);
+        CacheEntry<V> entry = entries.get(normalizedKey);
+        if (entry != null) {
+            if (!entry.isExpired(ttlMillis)) {
+                hitCount.incrementAndGet();
+                return entry.value;
+            }
+            // Serve the expired value while it is reloaded in the background
+            if (refreshLoader != null) {
+                hitCount.incrementAndGet();
+                refresh(key, normalizedKey, entry);
+                return entry.value;
+            }
+        }
+        missCount.incrementAndGet();
+        return load(key, normalizedKey, loader);
+    }
+
+    /**
+     * Returns the cached value without loading it, or null.
+     */
+    V getIfPresent(String key) {
+        CacheEntry<V> entry = entries.get(normalize(key));
+        return entry == null ? null : entry.value;
+    }
+
+    void put(String key, V value) {
+        store(normalize(key), value);
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    long getMissCount() {
+        return missCount.get();
+    }
+
+    long getLoadCount() {
+        return loadCount.get();
+    }
+
+    long getLoadFailureCount() {
+        return loadFailureCount.get();
+    }
+
+    long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Stops the background refresh thread.
+     */
+    void close() {
+        ExecutorService executor = refreshExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name+" cache: size="+entries.size()+", hits="+hitCount.get()+", misses="+missCount.get()+
+            ", loads="+loadCount.get()+", loadFailures="+loadFailureCount.get()+
+            ", refreshes="+refreshCount.get()+", evictions="+evictionCount.get();
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private V load(String key, String normalizedKey, Loader<V> loader) throws BridgeError {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = loading.putIfAbsent(normalizedKey, future);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            V value = loader.load(key);
+            loadCount.incrementAndGet();
+            store(normalizedKey, value);
+            future.complete(value);
+            return value;
+        } catch (BridgeError | RuntimeException e) {
+            loadFailureCount.incrementAndGet();
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(normalizedKey, future);
+        }
+    }
+
+    private void refresh(String key, String normalizedKey, CacheEntry<V> stale) {
+        // Skip keys that are already being loaded
+        CompletableFuture<V> future = new CompletableFuture<>();
+        if (loading.putIfAbsent(normalizedKey, future) != null) {
+            return;
+        }
+        try {
+            getRefreshExecutor().execute(() -> {
+                try {
+                    V value = refreshLoader.load(key);
+                    refreshCount.incrementAndGet();
+                    store(normalizedKey, value);
+                    future.complete(value);
+                    if (!Objects.equals(stale.value, value) && changeListener != null) {
+                        logger.info("The "+name+" schema definition of "+key+" changed.");
+                        changeListener.run();
+                    }
+                } catch (BridgeError | RuntimeException e) {
+                    // Keep serving the stale value until the next attempt
+                    loadFailureCount.incrementAndGet();
+                    logger.warn("Unable to refresh the "+name+" schema definition of "+key+": "+e.getMessage());
+                    stale.loadedAt = System.currentTimeMillis();
+                    future.completeExceptionally(e);
+                } finally {
+                    loading.remove(normalizedKey, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loading.remove(normalizedKey, future);
+        }
+    }
+
+    private V await(CompletableFuture<V> future) throws BridgeError {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BridgeError("Interrupted while waiting for the "+name+" schema definition.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof BridgeError) {
+                throw (BridgeError)cause;
+            }
+            throw new BridgeError("Unable to load the "+name+" schema definition: "+cause.getMessage(), cause);
+        }
+    }
+
+    private void store(String normalizedKey, V value) {
+        entries.put(normalizedKey, new CacheEntry<V>(value));
+        // Evict the oldest entries while the cache is over its bound
+        while (entries.size() > maxSize) {
+            String oldestKey = null;
+            long oldest = Long.MAX_VALUE;
+            Iterator<Map.Entry<String,CacheEntry<V>>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String,CacheEntry<V>> candidate = iterator.next();
+                if (candidate.getValue().loadedAt < oldest && !candidate.getKey().equals(normalizedKey)) {
+                    oldest = candidate.getValue().loadedAt;
+                    oldestKey = candidate.getKey();
+                }
+            }
+            if (oldestKey == null || entries.remove(oldestKey) == null) {
+                break;
+            }
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    private ExecutorService getRefreshExecutor() {
+        ExecutorService executor = refreshExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = refreshExecutor;
+                if (executor == null) {
+                    executor = Executors.newSingleThreadExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "ldap-"+name+"-schema-refresh");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    refreshExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static String normalize(String key) {
+        return key == null ? "" : key.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Internal class holding a cached value and the time it was loaded.
+     */
+    private static class CacheEntry<V> {
+        private final V value;
+        private volatile long loadedAt;
+
+        CacheEntry(V value) {
+            this.value = value;
+            this.loadedAt = System.currentTimeMillis();
+        }
+
+        boolean isExpired(long ttlMillis) {
+            return ttlMillis > 0 && System.currentTimeMillis() - loadedAt >= ttlMillis;
+        }
+    }
+}
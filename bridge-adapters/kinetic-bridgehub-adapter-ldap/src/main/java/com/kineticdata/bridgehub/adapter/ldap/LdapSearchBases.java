@@ -0,0 +1,206 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.Record;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+
+/**
+ * Helpers for searches that span several search bases: splitting and
+ * pruning the configured bases, running a search on each base concurrently
+ * and merging the sorted results.
+ */
+class LdapSearchBases {
+
+    /** Separates the search bases of the Search Base property. */
+    static final char SEPARATOR = ';';
+
+    /**
+     * Splits the search base on unescaped semicolons, trimming each base and
+     * dropping blank ones.  A single base is returned as is.
+     *
+     * @param searchBase
+     * @return
+     */
+    static List<String> split(String searchBase) {
+        List<String> bases = new ArrayList<String>();
+        if (searchBase == null) {
+            return bases;
+        }
+        StringBuilder base = new StringBuilder();
+        for (int i = 0; i < searchBase.length(); i++) {
+            char character = searchBase.charAt(i);
+            if (character == '\\' && i + 1 < searchBase.length()) {
+                base.append(character).append(searchBase.charAt(++i));
+            } else if (character == SEPARATOR) {
+                addBase(bases, base.toString());
+                base.setLength(0);
+            } else {
+                base.append(character);
+            }
+        }
+        addBase(bases, base.toString());
+        if (bases.isEmpty()) {
+            bases.add(searchBase.trim());
+        }
+        return bases;
+    }
+
+    /**
+     * Removes duplicate bases and bases nested in another base of the list,
+     * as a subtree search of the parent already covers them.  Names are
+     * compared the way the directory compares them (case insensitive types
+     * and values, insignificant spaces ignored); bases that are not valid
+     * names are kept.
+     *
+     * @param bases
+     * @return the remaining bases, in their original order
+     */
+    static List<String> prune(List<String> bases) {
+        List<LdapName> names = new ArrayList<LdapName>();
+        for (String base : bases) {
+            try {
+                names.add(new LdapName(base));
+            } catch (InvalidNameException e) {
+                names.add(null);
+            }
+        }
+        List<String> result = new ArrayList<String>();
+        Set<String> invalid = new HashSet<String>();
+        for (int i = 0; i < bases.size(); i++) {
+            LdapName name = names.get(i);
+            if (name == null) {
+                if (invalid.add(bases.get(i))) {
+                    result.add(bases.get(i));
+                }
+                continue;
+            }
+            boolean covered = false;
+            for (int j = 0; j < bases.size() && !covered; j++) {
+                LdapName other = names.get(j);
+                if (j == i || other == null) {
+                    continue;
+                }
+                // A name "starts with" its ancestors, the rightmost RDN coming first
+                covered = (other.size() < name.size() && name.startsWith(other))
+                    || (other.equals(name) && j < i);
+            }
+            if (!covered) {
+                result.add(bases.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs the search on every base and returns the results in the order of
+     * the bases.  A single base is searched on the calling thread; several
+     * bases are searched concurrently on the executor.  When a search fails
+     * the remaining searches are cancelled and its error is thrown.
+     *
+     * @param executor
+     * @param bases
+     * @param search
+     * @return
+     * @throws BridgeError
+     */
+    static <T> List<T> run(ExecutorService executor, List<String> bases, Search<T> search) throws BridgeError {
+        List<T> results = new ArrayList<T>();
+        if (bases.size() == 1 || executor == null) {
+            for (String base : bases) {
+                results.add(search.search(base));
+            }
+            return results;
+        }
+
+        List<Future<T>> futures = new ArrayList<Future<T>>();
+        for (String base : bases) {
+            futures.add(executor.submit(() -> search.search(base)));
+        }
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BridgeError("Interrupted while searching the search bases.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof BridgeError) {
+                throw (BridgeError)cause;
+            }
+            throw new BridgeError("There was a problem searching LDAP: "+cause.getMessage(), cause);
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Merges record lists that are each sorted by the comparator into a
+     * single sorted list, dropping records whose entry name was already
+     * merged.  Records without a name are always kept.
+     *
+     * @param lists the sorted record lists
+     * @param names the entry name (DN) of each record, keyed by identity
+     * @param comparator
+     * @return
+     */
+    static List<Record> merge(List<List<Record>> lists, Map<Record,String> names, Comparator<Record> comparator) {
+        int total = 0;
+        // Each cursor is the index of the list and of its next record
+        PriorityQueue<int[]> cursors = new PriorityQueue<int[]>(Math.max(1, lists.size()),
+            (a, b) -> {
+                int result = comparator.compare(lists.get(a[0]).get(a[1]), lists.get(b[0]).get(b[1]));
+                return result != 0 ? result : Integer.compare(a[0], b[0]);
+            });
+        for (int i = 0; i < lists.size(); i++) {
+            total += lists.get(i).size();
+            if (!lists.get(i).isEmpty()) {
+                cursors.add(new int[]{i, 0});
+            }
+        }
+
+        List<Record> merged = new ArrayList<Record>(total);
+        Set<String> seen = new HashSet<String>();
+        while (!cursors.isEmpty()) {
+            int[] cursor = cursors.poll();
+            List<Record> list = lists.get(cursor[0]);
+            Record record = list.get(cursor[1]);
+            String name = names.get(record);
+            if (name == null || seen.add(name.toLowerCase(Locale.ROOT))) {
+                merged.add(record);
+            }
+            if (++cursor[1] < list.size()) {
+                cursors.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    private static void addBase(List<String> bases, String base) {
+        if (!base.trim().isEmpty()) {
+            bases.add(base.trim());
+        }
+    }
+
+    /**
+     * A search of one search base.
+     */
+    interface Search<T> {
+        T search(String base) throws BridgeError;
+    }
+}
@@ -0,0 +1,433 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.naming.CommunicationException;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.ldap.LdapContext;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Group of directory servers, each with its own connection pool, that
+ * spreads the operations across the servers and fails over between them.
+ *
+ * Each borrow picks the healthy server with the lowest score, the score
+ * being the number of outstanding operations (plus one) weighted by the
+ * moving average of the server's probe latency.  The latency is measured by
+ * the background check with a single root DSE read, as leases cover work of
+ * any length (multiple page searches, replica loads, parked pages) that says
+ * nothing about how responsive the server is.  A server whose connection
+ * fails with a communication error is marked down for a back off period that
+ * doubles with each consecutive failure, and the background check probes
+ * every server so recovered servers come back before the back off ends.
+ */
+class LdapServerGroup {
+
+    /** Defines the logger */
+    protected static final org.slf4j.Logger logger = LoggerFactory.getLogger(LdapServerGroup.class);
+
+    /** Interval between active health checks. */
+    static final long HEALTH_CHECK_INTERVAL = 10000L;
+    /** Time a server is first marked down for, doubled on each consecutive failure. */
+    static final long MINIMUM_DOWN_TIME = 1000L;
+    /** Longest time a server is marked down for. */
+    static final long MAXIMUM_DOWN_TIME = 60000L;
+    /** Weight of the latest latency in the latency moving average. */
+    static final double LATENCY_WEIGHT = 0.2;
+    /** Time the health check waits for a pooled connection of a busy server. */
+    static final long HEALTH_CHECK_WAIT_TIMEOUT = 1000L;
+
+    private static final char PARK_SEPARATOR = '_';
+
+    private final List<Server> servers;
+    // The server of each leased context, keyed by identity
+    private final Map<LdapContext,Lease> leases = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService healthChecker;
+
+    /**
+     * @param servers the servers, each with its own connection pool
+     */
+    LdapServerGroup(List<Server> servers) {
+        if (servers.isEmpty()) {
+            throw new IllegalArgumentException("At least one server is required.");
+        }
+        this.servers = Collections.unmodifiableList(new ArrayList<Server>(servers));
+        // A single server is always selected, so it does not need probing
+        if (servers.size() > 1) {
+            this.healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ldap-server-health-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.healthChecker.scheduleWithFixedDelay(this::checkHealth, HEALTH_CHECK_INTERVAL,
+                HEALTH_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        } else {
+            this.healthChecker = null;
+        }
+    }
+
+    /**
+     * Leases a context from the best available server, trying the other
+     * servers when a server can not provide one.
+     *
+     * @return an exclusively leased context
+     * @throws BridgeError if no server could provide a context
+     */
+    LdapContext borrow() throws BridgeError {
+        Set<Server> tried = new HashSet<Server>();
+        BridgeError lastError = null;
+        while (tried.size() < servers.size()) {
+            Server server = select(tried);
+            tried.add(server);
+            server.outstanding.incrementAndGet();
+            try {
+                LdapContext context = server.pool.borrow();
+                leases.put(context, new Lease(server));
+                return context;
+            } catch (BridgeError e) {
+                server.outstanding.decrementAndGet();
+                if (isCommunicationFailure(e)) {
+                    markDown(server, e);
+                }
+                lastError = e;
+            }
+        }
+        throw lastError;
+    }
+
+    /**
+     * Returns a leased context to its server's pool.
+     */
+    void release(LdapContext context) {
+        Lease lease = context == null ? null : leases.remove(context);
+        if (lease == null) {
+            return;
+        }
+        lease.server.outstanding.decrementAndGet();
+        if (!lease.failed) {
+            lease.server.recordSuccess();
+        }
+        lease.server.pool.release(context);
+    }
+
+    /**
+     * Marks a leased context as unusable after a communication failure and
+     * marks its server down.  The context must still be released.
+     */
+    void invalidate(LdapContext context) {
+        Lease lease = context == null ? null : leases.get(context);
+        if (lease == null) {
+            return;
+        }
+        lease.failed = true;
+        markDown(lease.server, null);
+        lease.server.pool.invalidate(context);
+    }
+
+    /**
+     * Reserves a leased context for a later request.
+     *
+     * @return the id used to resume the context on the same server, or null
+     *   if the context could not be parked (it is then released)
+     */
+    String park(LdapContext context) {
+        Lease lease = context == null ? null : leases.remove(context);
+        if (lease == null) {
+            return null;
+        }
+        lease.server.outstanding.decrementAndGet();
+        lease.server.recordSuccess();
+        String id = lease.server.pool.park(context);
+        return id == null ? null : servers.indexOf(lease.server) + String.valueOf(PARK_SEPARATOR) + id;
+    }
+
+    /**
+     * Leases a parked context again, from the server it was parked on.
+     *
+     * @return the context, or null if it expired, was reclaimed or the id is
+     *   not valid
+     */
+    LdapContext resume(String id) {
+        int separator = id == null ? -1 : id.indexOf(PARK_SEPARATOR);
+        if (separator < 1) {
+            return null;
+        }
+        int index;
+        try {
+            index = Integer.parseInt(id.substring(0, separator));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (index < 0 || index >= servers.size()) {
+            return null;
+        }
+        Server server = servers.get(index);
+        LdapContext context = server.pool.resume(id.substring(separator + 1));
+        if (context != null) {
+            server.outstanding.incrementAndGet();
+            leases.put(context, new Lease(server));
+        }
+        return context;
+    }
+
+    /**
+     * Opens the minimum number of contexts of every server.
+     */
+    void prefill() {
+        for (Server server : servers) {
+            server.pool.prefill();
+        }
+    }
+
+    /**
+     * Stops the health checks and closes every pool.
+     */
+    void close() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+        for (Server server : servers) {
+            server.pool.close();
+        }
+    }
+
+    /**
+     * Returns the number of servers in the group.
+     */
+    int size() {
+        return servers.size();
+    }
+
+    List<Server> getServers() {
+        return servers;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Server server : servers) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(server);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Builds the provider url of each server of a comma or space separated
+     * list.  Each server is a host name, optionally followed by ":port", and
+     * IPv6 addresses are written in brackets ("[::1]:636").  Servers without a
+     * port use the default port.
+     *
+     * Example:
+     *   parseUrls("dc1.acme.com, dc2.acme.com:3268", "389", false)
+     *
+     * returns ["ldap://dc1.acme.com:389", "ldap://dc2.acme.com:3268"].
+     *
+     * @param servers
+     * @param defaultPort
+     * @param ssl true to build ldaps urls
+     * @return the urls, in the order of the list
+     */
+    static List<String> parseUrls(String servers, String defaultPort, boolean ssl) {
+        List<String> urls = new ArrayList<String>();
+        if (servers == null) {
+            return urls;
+        }
+        String scheme = ssl ? "ldaps://" : "ldap://";
+        String port = defaultPort == null ? "" : defaultPort.trim();
+        for (String server : servers.split("[,\\s]+")) {
+            if (server.isEmpty()) {
+                continue;
+            }
+            int portSeparator = server.startsWith("[")
+                ? server.indexOf("]:") + 1
+                : server.indexOf(':') == server.lastIndexOf(':') ? server.indexOf(':') : -1;
+            if (portSeparator > 0) {
+                urls.add(scheme+server);
+            } else {
+                urls.add(scheme+server+(port.isEmpty() ? "" : ":"+port));
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Returns true if the error, or one of its causes, is a failure to reach
+     * the server.
+     */
+    static boolean isCommunicationFailure(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CommunicationException || cause instanceof ServiceUnavailableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * Selects the healthy server with the lowest score, or the server that
+     * comes back up first when every remaining server is down.
+     */
+    Server select(Set<Server> excluded) {
+        long now = System.currentTimeMillis();
+        Server best = null;
+        double bestScore = Double.MAX_VALUE;
+        Server firstUp = null;
+        for (Server server : servers) {
+            if (excluded.contains(server)) {
+                continue;
+            }
+            if (server.isDown(now)) {
+                if (firstUp == null || server.downUntil < firstUp.downUntil) {
+                    firstUp = server;
+                }
+                continue;
+            }
+            double score = server.getScore();
+            if (best == null || score < bestScore) {
+                best = server;
+                bestScore = score;
+            }
+        }
+        return best != null ? best : firstUp;
+    }
+
+    private void markDown(Server server, Throwable error) {
+        int failures = server.consecutiveFailures.incrementAndGet();
+        long downTime = Math.min(MAXIMUM_DOWN_TIME, MINIMUM_DOWN_TIME << Math.min(failures - 1, 16));
+        server.downUntil = System.currentTimeMillis() + downTime;
+        logger.warn("Marking the LDAP server "+server.url+" down for "+downTime+"ms"+
+            (error == null ? "." : ": "+error.getMessage()));
+    }
+
+    /**
+     * Probes every server with a root DSE read on a pooled connection,
+     * recording its latency and marking servers that answer up and servers
+     * that fail down.  A server whose pool has no connection free within a
+     * short wait is busy rather than down, and is skipped.
+     */
+    void checkHealth() {
+        for (Server server : servers) {
+            LdapContext context;
+            try {
+                // Never reclaim a parked context, which would expire a page token
+                context = server.pool.borrow(HEALTH_CHECK_WAIT_TIMEOUT, false);
+            } catch (BridgeError e) {
+                if (isCommunicationFailure(e)) {
+                    markDown(server, e);
+                } else {
+                    logger.debug("Skipping the health check of the LDAP server "+server.url+": "+e.getMessage());
+                }
+                continue;
+            } catch (RuntimeException e) {
+                logger.warn("Unexpected problem checking the LDAP server "+server.url+".", e);
+                continue;
+            }
+            try {
+                long startedAt = System.nanoTime();
+                context.getAttributes("", new String[]{"supportedLDAPVersion"});
+                server.recordLatency(System.nanoTime() - startedAt);
+                if (server.consecutiveFailures.get() > 0) {
+                    logger.info("The LDAP server "+server.url+" is reachable again.");
+                }
+                server.recordSuccess();
+            } catch (NamingException e) {
+                server.pool.invalidate(context);
+                if (isCommunicationFailure(e)) {
+                    markDown(server, e);
+                } else {
+                    logger.debug("The health check of the LDAP server "+server.url+" failed: "+e.getMessage());
+                }
+            } finally {
+                server.pool.release(context);
+            }
+        }
+    }
+
+    /**
+     * A server of the group and its health and load statistics.
+     */
+    static class Server {
+        private final String url;
+        private final LdapContextPool pool;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile double latencyMillis = 0;
+        private volatile long downUntil = 0;
+
+        Server(String url, LdapContextPool pool) {
+            this.url = url;
+            this.pool = pool;
+        }
+
+        String getUrl() {
+            return url;
+        }
+
+        LdapContextPool getPool() {
+            return pool;
+        }
+
+        int getOutstanding() {
+            return outstanding.get();
+        }
+
+        double getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        boolean isDown(long now) {
+            return now < downUntil;
+        }
+
+        double getScore() {
+            return (outstanding.get() + 1) * Math.max(1.0, latencyMillis);
+        }
+
+        void recordSuccess() {
+            consecutiveFailures.set(0);
+            downUntil = 0;
+        }
+
+        void recordLatency(long latencyNanos) {
+            double latest = latencyNanos / 1000000.0;
+            double average = latencyMillis;
+            latencyMillis = average == 0 ? latest : LATENCY_WEIGHT * latest + (1 - LATENCY_WEIGHT) * average;
+        }
+
+        @Override
+        public String toString() {
+            return url+" (outstanding="+outstanding.get()+", latency="+Math.round(latencyMillis)+"ms"+
+                (isDown(System.currentTimeMillis()) ? ", down" : "")+")";
+        }
+    }
+
+    /**
+     * Internal class recording which server a leased context belongs to.
+     */
+    private static class Lease {
+        private final Server server;
+        private volatile boolean failed = false;
+
+        Lease(Server server) {
+            this.server = server;
+        }
+    }
+}
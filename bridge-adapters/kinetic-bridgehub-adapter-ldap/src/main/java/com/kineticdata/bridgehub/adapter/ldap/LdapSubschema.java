@@ -0,0 +1,347 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
+
+/**
+ * Immutable, fully resolved copy of the directory schema, read from the
+ * subschema subentry in a single search and parsed locally (RFC 4512).
+ *
+ * The effective syntax of every attribute type (following its SUP chain) and
+ * the inherited MAY and MUST attributes of every object class are resolved
+ * when the schema is parsed, so lookups never go back to the directory.
+ */
+class LdapSubschema {
+
+    /** Attributes read from the subschema subentry. */
+    static final String[] SUBSCHEMA_ATTRIBUTES = new String[]{"attributeTypes", "objectClasses", "modifyTimestamp"};
+
+    /** Keywords of the schema descriptions that do not take a value. */
+    private static final Set<String> FLAGS = new HashSet<String>(Arrays.asList(
+        "OBSOLETE", "SINGLE-VALUE", "COLLECTIVE", "NO-USER-MODIFICATION", "ABSTRACT", "STRUCTURAL", "AUXILIARY"));
+
+    // Lower cased attribute type name or OID to the effective syntax OID
+    private final Map<String,String> syntaxes;
+    // Lower cased object class name or OID to the sorted inherited attributes
+    private final Map<String,List<String>> structureFields;
+    private final List<String> structures;
+    private final String modifyTimestamp;
+
+    private LdapSubschema(Map<String,String> syntaxes, Map<String,List<String>> structureFields,
+        List<String> structures, String modifyTimestamp
+    ) {
+        this.syntaxes = syntaxes;
+        this.structureFields = structureFields;
+        this.structures = structures;
+        this.modifyTimestamp = modifyTimestamp;
+    }
+
+    /**
+     * Reads the subschema subentry advertised by the root DSE and parses it.
+     *
+     * @param context
+     * @return
+     * @throws BridgeError if the directory does not publish a subschema subentry
+     * @throws NamingException
+     */
+    static LdapSubschema read(LdapContext context) throws BridgeError, NamingException {
+        String subschemaSubentry = readSubschemaSubentry(context);
+        SearchControls controls = new SearchControls();
+        controls.setSearchScope(SearchControls.OBJECT_SCOPE);
+        controls.setReturningAttributes(SUBSCHEMA_ATTRIBUTES);
+        NamingEnumeration<SearchResult> results = context.search(subschemaSubentry, "(objectClass=subschema)", controls);
+        if (!results.hasMore()) {
+            throw new BridgeError("Unable to read the subschema subentry "+subschemaSubentry+".");
+        }
+        Attributes attributes = results.next().getAttributes();
+        results.close();
+        Attribute timestamp = attributes.get("modifyTimestamp");
+        return parse(values(attributes.get("attributeTypes")), values(attributes.get("objectClasses")),
+            timestamp == null ? null : timestamp.get().toString());
+    }
+
+    /**
+     * Reads the modifyTimestamp of the subschema subentry, or null when the
+     * directory does not publish one.
+     *
+     * @param context
+     * @return
+     * @throws BridgeError
+     * @throws NamingException
+     */
+    static String readModifyTimestamp(LdapContext context) throws BridgeError, NamingException {
+        Attribute timestamp = context.getAttributes(readSubschemaSubentry(context), new String[]{"modifyTimestamp"})
+            .get("modifyTimestamp");
+        return timestamp == null ? null : timestamp.get().toString();
+    }
+
+    /**
+     * Parses the attribute type and object class descriptions.
+     *
+     * @param attributeTypeDescriptions
+     * @param objectClassDescriptions
+     * @param modifyTimestamp
+     * @return
+     * @throws BridgeError if a description can not be parsed
+     */
+    static LdapSubschema parse(Collection<String> attributeTypeDescriptions,
+        Collection<String> objectClassDescriptions, String modifyTimestamp
+    ) throws BridgeError {
+        // Index the attribute type definitions by every name and OID
+        Map<String,Definition> attributeTypes = new HashMap<>();
+        for (String description : attributeTypeDescriptions) {
+            Definition definition = Definition.parse(description);
+            for (String key : definition.getKeys()) {
+                attributeTypes.put(key, definition);
+            }
+        }
+        // Resolve the effective syntax of each attribute type
+        Map<String,String> syntaxes = new HashMap<>();
+        for (Map.Entry<String,Definition> entry : attributeTypes.entrySet()) {
+            String syntax = resolveSyntax(entry.getValue(), attributeTypes);
+            if (syntax != null) {
+                syntaxes.put(entry.getKey(), syntax);
+            }
+        }
+
+        // Index the object class definitions by every name and OID
+        Map<String,Definition> objectClasses = new HashMap<>();
+        Set<String> structures = new TreeSet<String>();
+        for (String description : objectClassDescriptions) {
+            Definition definition = Definition.parse(description);
+            for (String key : definition.getKeys()) {
+                objectClasses.put(key, definition);
+            }
+            structures.add(definition.getName());
+        }
+        // Resolve the inherited attributes of each object class
+        Map<String,List<String>> structureFields = new HashMap<>();
+        for (Map.Entry<String,Definition> entry : objectClasses.entrySet()) {
+            Set<String> fields = new LinkedHashSet<String>();
+            collectFields(entry.getValue(), objectClasses, fields, new HashSet<Definition>());
+            List<String> sorted = new ArrayList<String>(fields);
+            Collections.sort(sorted);
+            structureFields.put(entry.getKey(), Collections.unmodifiableList(sorted));
+        }
+
+        return new LdapSubschema(syntaxes, structureFields,
+            Collections.unmodifiableList(new ArrayList<String>(structures)), modifyTimestamp);
+    }
+
+    /**
+     * Returns the effective syntax OID of the attribute type, or null if the
+     * attribute type is not defined.
+     */
+    String getSyntax(String attribute) {
+        return attribute == null ? null : syntaxes.get(attribute.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns the sorted MAY and MUST attributes of the object class and its
+     * super classes (excluding top), or null if the class is not defined.
+     */
+    List<String> getStructureFields(String structure) {
+        return structure == null ? null : structureFields.get(structure.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns the sorted names of the object classes.
+     */
+    List<String> getStructures() {
+        return structures;
+    }
+
+    String getModifyTimestamp() {
+        return modifyTimestamp;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private static String readSubschemaSubentry(LdapContext context) throws BridgeError, NamingException {
+        Attribute attribute = context.getAttributes("", new String[]{"subschemaSubentry"}).get("subschemaSubentry");
+        if (attribute == null || attribute.get() == null) {
+            throw new BridgeError("The directory does not publish a subschema subentry.");
+        }
+        return attribute.get().toString();
+    }
+
+    private static List<String> values(Attribute attribute) throws NamingException {
+        List<String> result = new ArrayList<String>();
+        if (attribute != null) {
+            NamingEnumeration<?> values = attribute.getAll();
+            while (values.hasMore()) {
+                result.add(values.next().toString());
+            }
+        }
+        return result;
+    }
+
+    private static String resolveSyntax(Definition definition, Map<String,Definition> attributeTypes) {
+        Set<Definition> visited = new HashSet<Definition>();
+        while (definition != null && visited.add(definition)) {
+            String syntax = definition.getFirst("SYNTAX");
+            if (syntax != null) {
+                // Strip the optional length bound, as in 1.3.6.1.4.1.1466.115.121.1.15{256}
+                int bound = syntax.indexOf('{');
+                return bound < 0 ? syntax : syntax.substring(0, bound);
+            }
+            String sup = definition.getFirst("SUP");
+            definition = sup == null ? null : attributeTypes.get(sup.toLowerCase(Locale.ROOT));
+        }
+        return null;
+    }
+
+    private static void collectFields(Definition definition, Map<String,Definition> objectClasses,
+        Set<String> fields, Set<Definition> visited
+    ) {
+        if (definition == null || "top".equalsIgnoreCase(definition.getName()) || !visited.add(definition)) {
+            return;
+        }
+        fields.addAll(definition.get("MAY"));
+        fields.addAll(definition.get("MUST"));
+        for (String sup : definition.get("SUP")) {
+            collectFields(objectClasses.get(sup.toLowerCase(Locale.ROOT)), objectClasses, fields, visited);
+        }
+    }
+
+    /**
+     * Internal class holding a parsed attribute type or object class
+     * description: its OID and the values of each keyword.
+     */
+    static class Definition {
+        private final String oid;
+        private final Map<String,List<String>> values;
+
+        private Definition(String oid, Map<String,List<String>> values) {
+            this.oid = oid;
+            this.values = values;
+        }
+
+        String getOid() {
+            return oid;
+        }
+
+        /** Returns the first NAME, or the OID when the definition has no name. */
+        String getName() {
+            String name = getFirst("NAME");
+            return name == null ? oid : name;
+        }
+
+        List<String> get(String keyword) {
+            List<String> result = values.get(keyword);
+            return result == null ? Collections.<String>emptyList() : result;
+        }
+
+        String getFirst(String keyword) {
+            List<String> result = values.get(keyword);
+            return result == null || result.isEmpty() ? null : result.get(0);
+        }
+
+        List<String> getKeys() {
+            List<String> keys = new ArrayList<String>();
+            keys.add(oid.toLowerCase(Locale.ROOT));
+            for (String name : get("NAME")) {
+                keys.add(name.toLowerCase(Locale.ROOT));
+            }
+            return keys;
+        }
+
+        /**
+         * Parses a description such as
+         * ( 2.5.4.3 NAME ( 'cn' 'commonName' ) SUP name ).
+         *
+         * @param description
+         * @return
+         * @throws BridgeError
+         */
+        static Definition parse(String description) throws BridgeError {
+            List<String> tokens = tokenize(description);
+            if (tokens.size() < 3 || !"(".equals(tokens.get(0)) || !")".equals(tokens.get(tokens.size() - 1))) {
+                throw new BridgeError("Unable to parse the schema description: "+description);
+            }
+            String oid = unquote(tokens.get(1));
+            Map<String,List<String>> values = new HashMap<>();
+            int position = 2;
+            int end = tokens.size() - 1;
+            while (position < end) {
+                String keyword = tokens.get(position++).toUpperCase(Locale.ROOT);
+                List<String> keywordValues = new ArrayList<String>();
+                if (!FLAGS.contains(keyword) && position < end) {
+                    if ("(".equals(tokens.get(position))) {
+                        // Read a list of values, which are separated by '$' for OIDs
+                        position++;
+                        while (position < end && !")".equals(tokens.get(position))) {
+                            String token = tokens.get(position++);
+                            if (!"$".equals(token)) {
+                                keywordValues.add(unquote(token));
+                            }
+                        }
+                        position++;
+                    } else {
+                        keywordValues.add(unquote(tokens.get(position++)));
+                    }
+                }
+                values.put(keyword, keywordValues);
+            }
+            return new Definition(oid, values);
+        }
+
+        private static List<String> tokenize(String description) throws BridgeError {
+            List<String> tokens = new ArrayList<String>();
+            int length = description.length();
+            int position = 0;
+            while (position < length) {
+                char character = description.charAt(position);
+                if (Character.isWhitespace(character)) {
+                    position++;
+                } else if (character == '(' || character == ')' || character == '$') {
+                    tokens.add(String.valueOf(character));
+                    position++;
+                } else if (character == '\'') {
+                    int close = description.indexOf('\'', position + 1);
+                    if (close < 0) {
+                        throw new BridgeError("Unterminated string in the schema description: "+description);
+                    }
+                    tokens.add(description.substring(position, close + 1));
+                    position = close + 1;
+                } else {
+                    int start = position;
+                    while (position < length && !Character.isWhitespace(description.charAt(position))
+                        && "()$'".indexOf(description.charAt(position)) < 0) {
+                        position++;
+                    }
+                    tokens.add(description.substring(start, position));
+                }
+            }
+            return tokens;
+        }
+
+        private static String unquote(String token) {
+            if (token.length() >= 2 && token.charAt(0) == '\'' && token.charAt(token.length() - 1) == '\'') {
+                // Decode the escaped quote and backslash (RFC 4512 qdstring)
+                return token.substring(1, token.length() - 1).replace("\\27", "'").replace("\\5C", "\\").replace("\\5c", "\\");
+            }
+            return token;
+        }
+    }
+}
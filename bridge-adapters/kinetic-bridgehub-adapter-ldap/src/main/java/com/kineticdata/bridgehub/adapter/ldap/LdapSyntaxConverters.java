@@ -0,0 +1,239 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.math.BigInteger;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import org.json.simple.JSONValue;
+
+/**
+ * Immutable registry mapping attribute syntax OIDs to value converters.
+ *
+ * The registry is built once and shared; every converter is stateless and
+ * uses the thread safe java.time formatters, so converting a value allocates
+ * no formatter or calendar.
+ */
+final class LdapSyntaxConverters {
+
+    // Define the syntax OIDs that have a dedicated converter
+    public static final String SYNTAX_BOOLEAN = "1.3.6.1.4.1.1466.115.121.1.7";
+    public static final String SYNTAX_GENERALIZED_TIME = LdapAdapter.SYNTAX_GENERALIZED_TIME;
+    public static final String SYNTAX_INTEGER = "1.3.6.1.4.1.1466.115.121.1.27";
+    public static final String SYNTAX_AD_INTEGER8 = "1.2.840.113556.1.4.906";
+
+    /** Active Directory Integer8 attributes that hold a FILETIME timestamp. */
+    static final Set<String> FILETIME_ATTRIBUTES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+        "accountexpires", "badpasswordtime", "lastlogoff", "lastlogon", "lastlogontimestamp",
+        "lockouttime", "msds-lastsuccessfulinteractivelogontime", "msds-lastfailedinteractivelogontime",
+        "msds-userpasswordexpirytimecomputed", "pwdlastset")));
+
+    /** Output format of timestamps, matches {@link LdapAdapter.Properties#DATE_FORMAT}. */
+    static final DateTimeFormatter ISO8601_FORMAT =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssxx", Locale.ROOT).withZone(ZoneOffset.UTC);
+
+    /** Seconds between the FILETIME epoch (1601-01-01) and the Unix epoch. */
+    private static final long FILETIME_EPOCH_OFFSET = 11644473600L;
+
+    /** Converts a single attribute value to its string representation. */
+    interface Converter {
+        String convert(Object value) throws BridgeError;
+    }
+
+    static final Converter DEFAULT_CONVERTER = value -> value.toString();
+
+    static final Converter GENERALIZED_TIME_CONVERTER = value ->
+        ISO8601_FORMAT.format(parseGeneralizedTime(value.toString()));
+
+    static final Converter BOOLEAN_CONVERTER = value -> {
+        String string = value.toString().trim();
+        if ("TRUE".equalsIgnoreCase(string)) {
+            return "true";
+        } else if ("FALSE".equalsIgnoreCase(string)) {
+            return "false";
+        }
+        return string;
+    };
+
+    static final Converter INTEGER_CONVERTER = value -> {
+        String string = value.toString().trim();
+        try {
+            return new BigInteger(string).toString();
+        } catch (NumberFormatException e) {
+            return string;
+        }
+    };
+
+    static final Converter FILETIME_CONVERTER = value -> {
+        String string = value.toString().trim();
+        long filetime;
+        try {
+            filetime = Long.parseLong(string);
+        } catch (NumberFormatException e) {
+            return string;
+        }
+        // 0 and the maximum value mean "never", leave them untouched
+        if (filetime <= 0 || filetime == Long.MAX_VALUE) {
+            return string;
+        }
+        Instant instant = Instant.ofEpochSecond(
+            filetime / 10000000L - FILETIME_EPOCH_OFFSET, (filetime % 10000000L) * 100L);
+        return ISO8601_FORMAT.format(instant);
+    };
+
+    /** Shared registry of the built in converters. */
+    static final LdapSyntaxConverters DEFAULT = new LdapSyntaxConverters();
+
+    private final Map<String,Converter> syntaxConverters;
+    private final Map<String,Converter> attributeConverters;
+
+    private LdapSyntaxConverters() {
+        Map<String,Converter> bySyntax = new HashMap<>();
+        bySyntax.put(SYNTAX_GENERALIZED_TIME, GENERALIZED_TIME_CONVERTER);
+        bySyntax.put(SYNTAX_BOOLEAN, BOOLEAN_CONVERTER);
+        bySyntax.put(SYNTAX_INTEGER, INTEGER_CONVERTER);
+        bySyntax.put(SYNTAX_AD_INTEGER8, INTEGER_CONVERTER);
+        this.syntaxConverters = Collections.unmodifiableMap(bySyntax);
+
+        Map<String,Converter> byAttribute = new HashMap<>();
+        for (String attribute : FILETIME_ATTRIBUTES) {
+            byAttribute.put(attribute, FILETIME_CONVERTER);
+        }
+        this.attributeConverters = Collections.unmodifiableMap(byAttribute);
+    }
+
+    /**
+     * Returns the converter for an attribute.  Attribute specific converters
+     * (such as Active Directory FILETIME attributes) take precedence over the
+     * converter registered for the syntax.
+     *
+     * @param attributeName
+     * @param syntax the syntax OID, may be null
+     * @return
+     */
+    Converter get(String attributeName, String syntax) {
+        Converter converter = attributeName == null ? null
+            : attributeConverters.get(attributeName.toLowerCase(Locale.ROOT));
+        if (converter == null && syntax != null) {
+            converter = syntaxConverters.get(syntax);
+        }
+        return converter == null ? DEFAULT_CONVERTER : converter;
+    }
+
+    /**
+     * Converts every value of the attribute.  Single values are returned as
+     * is, multiple values as a JSON array of strings.
+     *
+     * @param converter
+     * @param attribute
+     * @return
+     * @throws BridgeError
+     * @throws NamingException
+     */
+    static String convert(Converter converter, Attribute attribute) throws BridgeError, NamingException {
+        if (attribute.size() == 0) {
+            return null;
+        } else if (attribute.size() == 1) {
+            Object value = attribute.get();
+            return value == null ? null : converter.convert(value);
+        }
+        List<String> values = new ArrayList<>(attribute.size());
+        NamingEnumeration<?> enumeration = attribute.getAll();
+        while (enumeration.hasMore()) {
+            Object value = enumeration.next();
+            values.add(value == null ? null : converter.convert(value));
+        }
+        return JSONValue.toJSONString(values);
+    }
+
+    /**
+     * Parses an RFC 4517 Generalized Time value, supporting omitted minutes
+     * and seconds, fractions (separated by '.' or ','), the 'Z' suffix and
+     * numeric offsets.  Values without a time zone are treated as UTC.
+     *
+     * @param value
+     * @return
+     * @throws BridgeError
+     */
+    static Instant parseGeneralizedTime(String value) throws BridgeError {
+        String string = value.trim();
+        try {
+            int length = string.length();
+            int position = 10;
+            if (length < position) {
+                throw new BridgeError("Unable to parse date value: "+value);
+            }
+            int year = Integer.parseInt(string.substring(0, 4));
+            int month = Integer.parseInt(string.substring(4, 6));
+            int day = Integer.parseInt(string.substring(6, 8));
+            int hour = Integer.parseInt(string.substring(8, 10));
+            int minute = 0;
+            int second = 0;
+            if (position + 2 <= length && Character.isDigit(string.charAt(position))) {
+                minute = Integer.parseInt(string.substring(position, position + 2));
+                position += 2;
+                if (position + 2 <= length && Character.isDigit(string.charAt(position))) {
+                    second = Integer.parseInt(string.substring(position, position + 2));
+                    position += 2;
+                }
+            }
+
+            // Read the fraction, which applies to the last time unit present
+            long nanos = 0;
+            if (position < length && (string.charAt(position) == '.' || string.charAt(position) == ',')) {
+                int start = ++position;
+                while (position < length && Character.isDigit(string.charAt(position))) {
+                    position++;
+                }
+                if (position > start) {
+                    double fraction = Double.parseDouble("0."+string.substring(start, position));
+                    // The unit depends on the number of digits before the fraction
+                    int digits = start - 1;
+                    long unitNanos = digits == 10 ? 3600000000000L
+                        : digits == 12 ? 60000000000L
+                        : 1000000000L;
+                    nanos = Math.round(fraction * unitNanos);
+                }
+            }
+
+            // Read the time zone
+            ZoneOffset offset = ZoneOffset.UTC;
+            if (position < length) {
+                char zone = string.charAt(position);
+                if (zone == 'Z' || zone == 'z') {
+                    position++;
+                } else if (zone == '+' || zone == '-') {
+                    String offsetValue = string.substring(position + 1);
+                    int hours = Integer.parseInt(offsetValue.substring(0, 2));
+                    int minutes = offsetValue.length() >= 4 ? Integer.parseInt(offsetValue.substring(2, 4)) : 0;
+                    int seconds = (hours * 3600 + minutes * 60) * (zone == '-' ? -1 : 1);
+                    offset = ZoneOffset.ofTotalSeconds(seconds);
+                    position = length;
+                }
+            }
+            if (position != length) {
+                throw new BridgeError("Unable to parse date value: "+value);
+            }
+
+            return LocalDateTime.of(year, month, day, hour, minute, second)
+                .toInstant(offset)
+                .plusNanos(nanos);
+        } catch (NumberFormatException | DateTimeException | StringIndexOutOfBoundsException e) {
+            throw new BridgeError("Unable to parse date value: "+value, e);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+
+/**
+ * Small thread safe cache whose entries expire after a fixed time to live and
+ * which evicts the least recently used entry once it holds the maximum number
+ * of entries.  Hits, misses and evictions are counted.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+class LdapTtlCache<K,V> {
+
+    private final long timeToLive;
+    private final int maximumSize;
+    private final LinkedHashMap<K,CacheEntry<V>> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param timeToLive milliseconds an entry is served after it was stored
+     * @param maximumSize maximum number of entries held
+     */
+    LdapTtlCache(long timeToLive, int maximumSize) {
+        this.timeToLive = timeToLive;
+        this.maximumSize = maximumSize;
+        // Access ordered so the eldest entry is the least recently used one
+        this.entries = new LinkedHashMap<K,CacheEntry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K,CacheEntry<V>> eldest) {
+                boolean evict = size() > LdapTtlCache.this.maximumSize;
+                if (evict) {
+                    evictions.incrementAndGet();
+                }
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value, or null if it is missing or expired.
+     */
+    V get(K key) {
+        synchronized (entries) {
+            CacheEntry<V> entry = entries.get(key);
+            if (entry != null && entry.expiresAt < System.currentTimeMillis()) {
+                entries.remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.value;
+        }
+    }
+
+    void put(K key, V value) {
+        if (value == null || maximumSize < 1) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(key, new CacheEntry<>(value, System.currentTimeMillis() + timeToLive));
+        }
+    }
+
+    void remove(K key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "size="+size()+", hits="+hits.get()+", misses="+misses.get()+", evictions="+evictions.get();
+    }
+
+    /**
+     * Builds a cache key for a search, normalizing the case and spacing of the
+     * search base so equivalent DNs share an entry.
+     *
+     * @param searchBase
+     * @param filter
+     * @return
+     */
+    static String searchKey(String searchBase, String filter) {
+        return searchKey(Collections.singletonList(searchBase), filter);
+    }
+
+    /**
+     * Builds a cache key for a search of several search bases whose result
+     * does not depend on their order, such as a count.  Each base is
+     * normalized on its own and the bases are sorted.
+     *
+     * @param searchBases
+     * @param filter
+     * @return
+     */
+    static String searchKey(List<String> searchBases, String filter) {
+        List<String> normalizedBases = new ArrayList<String>(searchBases.size());
+        for (String searchBase : searchBases) {
+            normalizedBases.add(normalizeDn(searchBase));
+        }
+        Collections.sort(normalizedBases);
+        StringBuilder key = new StringBuilder();
+        for (String normalizedBase : normalizedBases) {
+            key.append(normalizedBase).append('\u0000');
+        }
+        return key.append('\u0000').append(filter == null ? "" : filter.trim()).toString();
+    }
+
+    /**
+     * Returns the DN with lower cased attribute types and values and without
+     * insignificant spaces.  Values that can not be parsed are only trimmed
+     * and lower cased.
+     */
+    static String normalizeDn(String dn) {
+        if (dn == null) {
+            return "";
+        }
+        try {
+            StringBuilder result = new StringBuilder();
+            LdapName name = new LdapName(dn);
+            // LdapName stores the RDNs right to left
+            for (int i = name.size()-1; i >= 0; i--) {
+                Rdn rdn = name.getRdn(i);
+                if (result.length() > 0) {
+                    result.append(',');
+                }
+                result.append(rdn.toString().toLowerCase(Locale.ROOT));
+            }
+            return result.toString();
+        } catch (InvalidNameException e) {
+            return dn.trim().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Internal class holding a cached value and its expiration time.
+     */
+    private static class CacheEntry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        CacheEntry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import java.io.IOException;
+import javax.naming.ldap.BasicControl;
+import javax.naming.ldap.Control;
+
+/**
+ * Virtual List View request control (draft-ietf-ldapext-ldapv3-vlv) selecting
+ * a window of a server sorted result by offset.  The control must be sent
+ * together with a sort control.
+ */
+class LdapVlvControl extends BasicControl {
+
+    /** OID of the VLV request control. */
+    static final String OID = "2.16.840.1.113730.3.4.9";
+    /** OID of the VLV response control. */
+    static final String RESPONSE_OID = "2.16.840.1.113730.3.4.10";
+
+    private static final int TAG_BY_OFFSET = 0xa0;
+
+    /**
+     * @param offset one based position of the first entry of the window
+     * @param count number of entries in the window
+     * @param contentCount the client's estimate of the result size (0 if unknown)
+     * @param criticality
+     */
+    LdapVlvControl(int offset, int count, int contentCount, boolean criticality) {
+        super(OID, criticality, LdapBer.encodeConstructed(LdapBer.TAG_SEQUENCE,
+            LdapBer.encodeInteger(0),
+            LdapBer.encodeInteger(Math.max(0, count - 1)),
+            LdapBer.encodeConstructed(TAG_BY_OFFSET,
+                LdapBer.encodeInteger(offset),
+                LdapBer.encodeInteger(contentCount))));
+    }
+
+    /**
+     * Returns the parsed VLV response control from the response controls, or
+     * null when the server did not return one.
+     *
+     * @param responseControls
+     * @return
+     * @throws IOException if the control value can not be decoded
+     */
+    static Response getResponse(Control[] responseControls) throws IOException {
+        if (responseControls != null) {
+            for (Control control : responseControls) {
+                if (RESPONSE_OID.equals(control.getID())) {
+                    return Response.decode(control.getEncodedValue());
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Internal class holding the decoded VLV response control value.
+     */
+    static class Response {
+        private final long targetPosition;
+        private final long contentCount;
+        private final int resultCode;
+
+        Response(long targetPosition, long contentCount, int resultCode) {
+            this.targetPosition = targetPosition;
+            this.contentCount = contentCount;
+            this.resultCode = resultCode;
+        }
+
+        static Response decode(byte[] value) throws IOException {
+            LdapBer.Reader reader = new LdapBer.Reader(value).readConstructed(LdapBer.TAG_SEQUENCE);
+            long targetPosition = reader.readInteger();
+            long contentCount = reader.readInteger();
+            int resultCode = (int)reader.readInteger(LdapBer.TAG_ENUMERATED);
+            return new Response(targetPosition, contentCount, resultCode);
+        }
+
+        long getTargetPosition() {
+            return targetPosition;
+        }
+
+        long getContentCount() {
+            return contentCount;
+        }
+
+        int getResultCode() {
+            return resultCode;
+        }
+
+        boolean isSuccess() {
+            return resultCode == 0;
+        }
+    }
+}
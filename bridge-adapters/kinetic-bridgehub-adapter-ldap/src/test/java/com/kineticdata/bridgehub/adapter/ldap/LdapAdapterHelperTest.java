@@ -3,10 +3,12 @@ package com.kineticdata.bridgehub.adapter.ldap;
 import com.kineticdata.bridgehub.adapter.BridgeError;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 public class LdapAdapterHelperTest {
 
@@ -487,4 +489,17 @@ public class LdapAdapterHelperTest {
 
         assertEquals("OU=Users,OU=corp,DC=acme,DC=com", finalSearchBase);
     }
+
+    @Test
+    public void test_requestKey_normalizesSearchBases() {
+        String key = LdapAdapter.requestKey("User", null, Arrays.asList("OU=Users, DC=acme,DC=com"),
+            "(samaccountname=userid)", "false");
+
+        assertEquals(key, LdapAdapter.requestKey("user", null, Arrays.asList("ou=users,dc=acme,dc=com"),
+            "(samaccountname=userid)", "false"));
+        assertFalse(key.equals(LdapAdapter.requestKey("User", null, Arrays.asList("OU=Users,DC=acme,DC=com"),
+            "(samaccountname=userid)", "true")));
+        assertFalse(key.equals(LdapAdapter.requestKey("User", Arrays.asList("mail"),
+            Arrays.asList("OU=Users,DC=acme,DC=com"), "(samaccountname=userid)", "false")));
+    }
 }
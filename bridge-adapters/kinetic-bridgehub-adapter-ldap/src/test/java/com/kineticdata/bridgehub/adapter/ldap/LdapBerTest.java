@@ -0,0 +1,66 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LdapBerTest {
+
+    @Test
+    public void test_encodeInteger_minimalLength() throws Exception {
+        assertArrayEquals(new byte[]{0x02, 0x01, 0x00}, LdapBer.encodeInteger(0));
+        assertArrayEquals(new byte[]{0x02, 0x01, 0x7f}, LdapBer.encodeInteger(127));
+        assertArrayEquals(new byte[]{0x02, 0x02, 0x00, (byte)0x80}, LdapBer.encodeInteger(128));
+        assertArrayEquals(new byte[]{0x02, 0x01, (byte)0xff}, LdapBer.encodeInteger(-1));
+    }
+
+    @Test
+    public void test_readInteger_roundTrip() throws Exception {
+        long[] values = new long[]{0, 1, -1, 127, 128, -129, 65536, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            assertEquals(value, new LdapBer.Reader(LdapBer.encodeInteger(value)).readInteger());
+        }
+    }
+
+    @Test
+    public void test_encode_longLength() throws Exception {
+        byte[][] elements = new byte[100][];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = LdapBer.encodeInteger(i);
+        }
+        byte[] encoded = LdapBer.encodeConstructed(LdapBer.TAG_SEQUENCE, elements);
+
+        assertEquals(0x82, encoded[1] & 0xff);
+        LdapBer.Reader reader = new LdapBer.Reader(encoded).readConstructed(LdapBer.TAG_SEQUENCE);
+        for (int i = 0; i < elements.length; i++) {
+            assertEquals(i, reader.readInteger());
+        }
+        assertFalse(reader.hasMore());
+    }
+
+    @Test
+    public void test_vlvControl_encodesByOffset() throws Exception {
+        LdapVlvControl control = new LdapVlvControl(1, 10, 0, true);
+
+        assertArrayEquals(new byte[]{
+            0x30, 0x0e,
+            0x02, 0x01, 0x00,
+            0x02, 0x01, 0x09,
+            (byte)0xa0, 0x06, 0x02, 0x01, 0x01, 0x02, 0x01, 0x00
+        }, control.getEncodedValue());
+    }
+
+    @Test
+    public void test_vlvResponse_decodes() throws Exception {
+        byte[] value = LdapBer.encodeConstructed(LdapBer.TAG_SEQUENCE,
+            LdapBer.encodeInteger(41),
+            LdapBer.encodeInteger(1234),
+            LdapBer.encodeInteger(LdapBer.TAG_ENUMERATED, 0));
+
+        LdapVlvControl.Response response = LdapVlvControl.Response.decode(value);
+
+        assertEquals(41, response.getTargetPosition());
+        assertEquals(1234, response.getContentCount());
+        assertTrue(response.isSuccess());
+    }
+}
@@ -0,0 +1,76 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.Record;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LdapCompactRecordListTest {
+
+    @Test
+    public void test_toRecordList_roundTrip() {
+        RecordList recordList = recordList(1000);
+        recordList.getRecords().add(new Record(null));
+
+        RecordList copy = LdapCompactRecordList.of(recordList, new LdapInternPool(64)).toRecordList();
+
+        assertEquals(recordList.getFields(), copy.getFields());
+        assertEquals(recordList.getMetadata(), copy.getMetadata());
+        assertEquals(1001, copy.getRecords().size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(recordList.getRecords().get(i).getRecord(), copy.getRecords().get(i).getRecord());
+        }
+        assertNull(copy.getRecords().get(1000).getRecord());
+        assertEquals(Arrays.asList("sAMAccountName", "department", "memberOf"),
+            new ArrayList<String>(copy.getRecords().get(0).getRecord().keySet()));
+    }
+
+    @Test
+    public void test_of_sharesRepeatedValues() {
+        RecordList recordList = recordList(1000);
+
+        LdapCompactRecordList compact = LdapCompactRecordList.of(recordList, new LdapInternPool(4096));
+        RecordList copy = compact.toRecordList();
+
+        assertSame(copy.getRecords().get(0).getRecord().get("department"),
+            copy.getRecords().get(999).getRecord().get("department"));
+        // Shared values are counted once, so the compact form is well under
+        // the size of a copy without sharing
+        assertTrue(compact.getBytes() * 2 < LdapCompactRecordList.of(recordList, LdapInternPool.NONE).getBytes());
+    }
+
+    @Test
+    public void test_toRecordList_returnsCopies() {
+        LdapCompactRecordList compact = LdapCompactRecordList.of(recordList(2), LdapInternPool.NONE);
+
+        RecordList first = compact.toRecordList();
+        ((List<Object>)first.getRecords().get(0).getRecord().get("memberOf")).clear();
+        first.getMetadata().put("size", "0");
+
+        RecordList second = compact.toRecordList();
+        assertEquals(2, ((List<?>)second.getRecords().get(0).getRecord().get("memberOf")).size());
+        assertEquals("2", second.getMetadata().get("size"));
+    }
+
+    private static RecordList recordList(int size) {
+        List<Record> records = new ArrayList<Record>();
+        for (int i = 0; i < size; i++) {
+            Map<String,Object> values = new LinkedHashMap<String,Object>();
+            values.put("sAMAccountName", "user"+i);
+            // Each record holds its own copy of the repeated values
+            values.put("department", new String("Sales and Marketing"));
+            values.put("memberOf", new ArrayList<Object>(Arrays.asList(
+                new String("CN=Staff,OU=Groups,DC=acme,DC=com"), new String("CN=Sales,OU=Groups,DC=acme,DC=com"))));
+            records.add(new Record(values));
+        }
+        Map<String,String> metadata = new LinkedHashMap<String,String>();
+        metadata.put("size", String.valueOf(size));
+        return new RecordList(Arrays.asList("sAMAccountName", "department", "memberOf"), records, metadata);
+    }
+}
@@ -0,0 +1,199 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import static org.junit.Assert.*;
+
+public class LdapContextPoolTest {
+
+    @Test
+    public void test_borrow_reusesReleasedContext() throws Exception {
+        List<FakeContext> created = new ArrayList<>();
+        LdapContextPool pool = new LdapContextPool(() -> fake(created), 0, 2, 60000, 0, 1000);
+
+        LdapContext first = pool.borrow();
+        pool.release(first);
+        LdapContext second = pool.borrow();
+        pool.release(second);
+
+        assertSame(first, second);
+        assertEquals(1, created.size());
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(0, pool.getLeasedCount());
+        pool.close();
+    }
+
+    @Test
+    public void test_borrow_timesOutWhenExhausted() throws Exception {
+        LdapContextPool pool = new LdapContextPool(() -> fake(new ArrayList<>()), 0, 1, 60000, 0, 50);
+
+        LdapContext leased = pool.borrow();
+        BridgeError expectedError = null;
+        try {
+            pool.borrow();
+        } catch (BridgeError e) {
+            expectedError = e;
+        }
+
+        assertNotNull(expectedError);
+        pool.release(leased);
+        pool.close();
+    }
+
+    @Test
+    public void test_release_discardsInvalidatedContext() throws Exception {
+        List<FakeContext> created = new ArrayList<>();
+        LdapContextPool pool = new LdapContextPool(() -> fake(created), 0, 2, 60000, 0, 1000);
+
+        LdapContext context = pool.borrow();
+        pool.invalidate(context);
+        pool.release(context);
+
+        assertTrue(created.get(0).closed);
+        assertEquals(0, pool.getIdleCount());
+        assertNotSame(context, pool.borrow());
+        pool.close();
+    }
+
+    @Test
+    public void test_borrow_replacesExpiredContext() throws Exception {
+        List<FakeContext> created = new ArrayList<>();
+        LdapContextPool pool = new LdapContextPool(() -> fake(created), 0, 2, 60000, 1, 1000);
+
+        LdapContext first = pool.borrow();
+        Thread.sleep(5);
+        pool.release(first);
+
+        assertTrue(created.get(0).closed);
+        assertNotSame(first, pool.borrow());
+        pool.close();
+    }
+
+    @Test
+    public void test_park_keepsContextForResume() throws Exception {
+        LdapContextPool pool = new LdapContextPool(() -> fake(new ArrayList<>()), 0, 2, 60000, 0, 1000);
+
+        LdapContext context = pool.borrow();
+        String id = pool.park(context);
+
+        assertEquals(1, pool.getParkedCount());
+        assertEquals(0, pool.getLeasedCount());
+        assertSame(context, pool.resume(id));
+        assertNull(pool.resume(id));
+        pool.release(context);
+        pool.close();
+    }
+
+    @Test
+    public void test_borrow_reclaimsParkedContextWhenExhausted() throws Exception {
+        LdapContextPool pool = new LdapContextPool(() -> fake(new ArrayList<>()), 0, 2, 60000, 0, 50);
+
+        LdapContext leased = pool.borrow();
+        String id = pool.park(pool.borrow());
+        LdapContext context = pool.borrow();
+
+        assertNotNull(context);
+        assertNull(pool.resume(id));
+        pool.release(context);
+        pool.release(leased);
+        pool.close();
+    }
+
+    @Test
+    public void test_borrow_doesNotWaitForParkedContexts() throws Exception {
+        LdapContextPool pool = new LdapContextPool(() -> fake(new ArrayList<>()), 0, 3, 60000, 0, 30000);
+
+        LdapContext leased = pool.borrow();
+        pool.park(pool.borrow());
+        pool.park(pool.borrow());
+        long start = System.currentTimeMillis();
+        LdapContext context = pool.borrow();
+
+        assertNotNull(context);
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertEquals(1, pool.getParkedCount());
+        assertEquals(2, pool.getLeasedCount());
+        pool.release(context);
+        pool.release(leased);
+        pool.close();
+    }
+
+    @Test
+    public void test_park_keepsOneSlotFree() throws Exception {
+        LdapContextPool pool = new LdapContextPool(() -> fake(new ArrayList<>()), 0, 3, 60000, 0, 1000);
+
+        String first = pool.park(pool.borrow());
+        String second = pool.park(pool.borrow());
+        String third = pool.park(pool.borrow());
+
+        assertEquals(2, pool.getParkedCount());
+        assertNull(pool.resume(first));
+        assertNotNull(pool.resume(second));
+        assertNotNull(pool.resume(third));
+        pool.close();
+    }
+
+    @Test
+    public void test_park_releasesWhenPoolHoldsOneContext() throws Exception {
+        LdapContextPool pool = new LdapContextPool(() -> fake(new ArrayList<>()), 0, 1, 60000, 0, 50);
+
+        assertNull(pool.park(pool.borrow()));
+        assertEquals(0, pool.getParkedCount());
+        assertEquals(1, pool.getIdleCount());
+        pool.close();
+    }
+
+    @Test
+    public void test_prefill_opensMinimumSize() throws Exception {
+        LdapContextPool pool = new LdapContextPool(() -> fake(new ArrayList<>()), 3, 5, 60000, 0, 1000);
+
+        pool.prefill();
+
+        assertEquals(3, pool.getIdleCount());
+        pool.close();
+    }
+
+    private static FakeContext fake(List<FakeContext> created) throws BridgeError {
+        try {
+            FakeContext context = new FakeContext();
+            created.add(context);
+            return context;
+        } catch (NamingException e) {
+            throw new BridgeError("Unable to build the test context.", e);
+        }
+    }
+
+    /**
+     * Context that never connects, used to exercise the pool bookkeeping.
+     */
+    private static class FakeContext extends InitialLdapContext {
+        private boolean closed = false;
+
+        FakeContext() throws NamingException {
+            super();
+        }
+
+        @Override
+        public void setRequestControls(Control[] requestControls) {}
+
+        @Override
+        public Attributes getAttributes(String name, String[] attributes) {
+            return new BasicAttributes(true);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LdapFilterTest {
+
+    @Test
+    public void test_parse_roundTrip() throws Exception {
+        String filter = "(&(|(mail=*domain.com)(givenname~=jon))(!(cn=*))(uid>=100)(cn:dn:2.5.13.5:=John)(description=a\\29b))";
+
+        assertEquals(filter, LdapFilter.parse(filter).toString());
+    }
+
+    @Test
+    public void test_optimize_flattenAndMergeObjectClass() {
+        String filter = "(&(objectClass=user)(&(objectclass=USER)(&(sAMAccountName=userid))(mail=*)))";
+
+        assertEquals("(&(samaccountname=userid)(objectclass=user)(mail=*))", LdapFilter.optimize(filter));
+    }
+
+    @Test
+    public void test_optimize_equalityFirst() {
+        String filter = "(&(objectClass=user)(!(mail=*))(|(sn=a)(sn=b)(sn=a))(cn=J*)(uid=jdoe))";
+
+        assertEquals("(&(uid=jdoe)(cn=J*)(objectclass=user)(!(mail=*))(|(sn=a)(sn=b)))", LdapFilter.optimize(filter));
+    }
+
+    @Test
+    public void test_optimize_doubleNegation() {
+        assertEquals("(cn=a)", LdapFilter.optimize("(!(!(cn=a)))"));
+        assertEquals("(cn=a)", LdapFilter.optimize("(|(cn=a)(CN=a))"));
+    }
+
+    @Test
+    public void test_optimize_equivalentFiltersShareCanonicalForm() {
+        assertEquals(
+            LdapFilter.optimize("(&(objectClass=user)(&(mail=a@acme.com)(sn=Smith)))"),
+            LdapFilter.optimize("(&(objectClass=User)(mail=a@acme.com)(SN=Smith)(mail=a@acme.com))"));
+    }
+
+    @Test
+    public void test_optimize_invalidFilterUnchanged() {
+        String filter = "(&(objectClass=user)(cn=John (Admin)))";
+
+        assertEquals(filter, LdapFilter.optimize(filter));
+    }
+
+    @Test
+    public void test_parse_invalidFilter() {
+        BridgeError expectedError = null;
+        try {
+            LdapFilter.parse("(&(cn=a)");
+        } catch (BridgeError e) {
+            expectedError = e;
+        }
+
+        assertNotNull(expectedError);
+    }
+
+    @Test
+    public void test_matches() throws Exception {
+        Map<String,List<?>> entry = new HashMap<>();
+        entry.put("objectclass", Arrays.asList("top", "person", "User"));
+        entry.put("mail", Arrays.asList("John.Smith@acme.com"));
+        entry.put("cn", Arrays.asList("Smith, John (Admin)"));
+        entry.put("uidnumber", Arrays.asList("1200"));
+        entry.put("useraccountcontrol", Arrays.asList("514"));
+        entry.put("objectcategory", Arrays.asList("CN=Person,CN=Schema,CN=Configuration,DC=acme,DC=com"));
+
+        assertTrue(LdapFilter.parse("(&(objectClass=user)(mail=john.smith@ACME.com))").matches(entry::get));
+        assertTrue(LdapFilter.parse("(cn=smith*\\28admin\\29)").matches(entry::get));
+        assertTrue(LdapFilter.parse("(cn=*john*)").matches(entry::get));
+        assertFalse(LdapFilter.parse("(cn=john*)").matches(entry::get));
+        assertTrue(LdapFilter.parse("(uidNumber>=999)").matches(entry::get));
+        assertFalse(LdapFilter.parse("(uidNumber<=999)").matches(entry::get));
+        assertTrue(LdapFilter.parse("(!(telephoneNumber=*))").matches(entry::get));
+        assertTrue(LdapFilter.parse("(|(sn=x)(objectCategory=person))").matches(entry::get));
+        assertTrue(LdapFilter.parse("(userAccountControl:1.2.840.113556.1.4.803:=2)").matches(entry::get));
+        assertFalse(LdapFilter.parse("(userAccountControl:1.2.840.113556.1.4.803:=16)").matches(entry::get));
+    }
+
+    @Test
+    public void test_isEvaluable() throws Exception {
+        HashSet<String> attributes = new HashSet<>(Arrays.asList("objectclass", "mail", "useraccountcontrol"));
+
+        assertTrue(LdapFilter.parse("(&(objectClass=user)(!(mail=*)))").isEvaluable(attributes));
+        assertTrue(LdapFilter.parse("(userAccountControl:1.2.840.113556.1.4.804:=3)").isEvaluable(attributes));
+        assertFalse(LdapFilter.parse("(&(objectClass=user)(memberOf=CN=Staff))").isEvaluable(attributes));
+        assertFalse(LdapFilter.parse("(mail:2.5.13.5:=a@acme.com)").isEvaluable(attributes));
+    }
+}
@@ -0,0 +1,60 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LdapIndexMetadataTest {
+
+    private static final LdapIndexMetadata METADATA = new LdapIndexMetadata(
+        Arrays.asList("sAMAccountName", "mail", "cn"), Arrays.asList("displayName"));
+
+    private static LdapIndexMetadata.Classification classify(String filter) throws Exception {
+        return METADATA.classify(LdapFilter.parse(filter).normalize());
+    }
+
+    @Test
+    public void test_classify_andUsesAnyIndexedTerm() throws Exception {
+        assertEquals(LdapIndexMetadata.Classification.INDEXED,
+            classify("(&(objectClass=user)(samaccountname=jdoe)(description=*admin*))"));
+        assertEquals(LdapIndexMetadata.Classification.INDEXED,
+            classify("(&(objectClass=user)(mail=j*))"));
+    }
+
+    @Test
+    public void test_classify_leadingWildcard() throws Exception {
+        assertEquals(LdapIndexMetadata.Classification.UNINDEXED,
+            classify("(&(objectClass=user)(description=*admin))"));
+        assertEquals(LdapIndexMetadata.Classification.UNINDEXED,
+            classify("(&(objectClass=user)(mail=*@acme.com))"));
+        assertEquals(LdapIndexMetadata.Classification.INDEXED,
+            classify("(&(objectClass=user)(displayName=*smith))"));
+    }
+
+    @Test
+    public void test_classify_orNeedsEveryTermIndexed() throws Exception {
+        assertEquals(LdapIndexMetadata.Classification.INDEXED,
+            classify("(&(objectClass=user)(|(mail=a@acme.com)(cn=a)))"));
+        assertEquals(LdapIndexMetadata.Classification.UNINDEXED,
+            classify("(&(objectClass=user)(|(mail=a@acme.com)(description=a)))"));
+    }
+
+    @Test
+    public void test_classify_orOfObjectClassesIsNeutral() throws Exception {
+        assertEquals(LdapIndexMetadata.Classification.NEUTRAL,
+            classify("(|(objectClass=user)(objectClass=contact))"));
+        assertEquals(LdapIndexMetadata.Classification.INDEXED,
+            classify("(&(|(objectClass=user)(objectClass=contact))(mail=a@acme.com))"));
+        assertEquals(LdapIndexMetadata.Classification.UNINDEXED,
+            classify("(&(|(objectClass=user)(objectClass=contact))(description=a))"));
+    }
+
+    @Test
+    public void test_classify_negationAndObjectClass() throws Exception {
+        assertEquals(LdapIndexMetadata.Classification.UNINDEXED,
+            classify("(&(objectClass=user)(!(mail=a@acme.com)))"));
+        assertEquals(LdapIndexMetadata.Classification.NEUTRAL,
+            classify("(objectClass=user)"));
+    }
+}
@@ -0,0 +1,97 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LdapIndexedEntryStoreTest {
+
+    private final LdapColumns columns = new LdapColumns();
+
+    @Test
+    public void test_find_usesMostSelectiveIndex() throws Exception {
+        LdapIndexedEntryStore store = new LdapIndexedEntryStore(Arrays.asList("mail", "department"),
+            Arrays.asList("displayName"));
+        for (int i = 0; i < 100; i++) {
+            store.put(entry("CN=User"+i+",DC=acme,DC=com", "user"+i+"@acme.com", "Sales", "User "+i));
+        }
+
+        List<LdapReplica.Entry> result = store.find(
+            LdapFilter.parse("(&(objectClass=user)(department=sales)(mail=USER42@acme.com))"), entry -> true);
+
+        assertEquals(1, result.size());
+        assertEquals("CN=User42,DC=acme,DC=com", result.get(0).getName());
+        assertEquals(1, store.getIndexedCount());
+        assertEquals(0, store.getScanCount());
+    }
+
+    @Test
+    public void test_find_prefixIndex() throws Exception {
+        LdapIndexedEntryStore store = new LdapIndexedEntryStore(Collections.<String>emptyList(),
+            Arrays.asList("displayName"));
+        store.put(entry("CN=Adams,DC=acme,DC=com", "adams@acme.com", "Sales", "Adams, Ann"));
+        store.put(entry("CN=Adler,DC=acme,DC=com", "adler@acme.com", "Support", "Adler, Bob"));
+        store.put(entry("CN=Baker,DC=acme,DC=com", "baker@acme.com", "Sales", "Baker, Carl"));
+
+        assertEquals(2, store.find(LdapFilter.parse("(displayName=ad*)"), entry -> true).size());
+        assertEquals(1, store.find(LdapFilter.parse("(displayName=ad*bob)"), entry -> true).size());
+        assertEquals(1, store.find(LdapFilter.parse("(&(displayName=ad*)(department=Sales))"), entry -> true).size());
+        assertEquals(3, store.getIndexedCount());
+        // A leading wildcard can not use the index
+        assertEquals(1, store.find(LdapFilter.parse("(displayName=*carl)"), entry -> true).size());
+        assertEquals(1, store.getScanCount());
+    }
+
+    @Test
+    public void test_find_orRequiresEveryTermIndexed() throws Exception {
+        LdapIndexedEntryStore store = new LdapIndexedEntryStore(Arrays.asList("mail"), Collections.<String>emptyList());
+        store.put(entry("CN=Adams,DC=acme,DC=com", "adams@acme.com", "Sales", "Adams"));
+        store.put(entry("CN=Baker,DC=acme,DC=com", "baker@acme.com", "Sales", "Baker"));
+
+        assertEquals(2, store.find(LdapFilter.parse("(|(mail=adams@acme.com)(mail=baker@acme.com))"),
+            entry -> true).size());
+        assertEquals(1, store.getIndexedCount());
+        assertEquals(2, store.find(LdapFilter.parse("(|(mail=adams@acme.com)(department=sales))"),
+            entry -> true).size());
+        assertEquals(1, store.getScanCount());
+    }
+
+    @Test
+    public void test_put_replacesEntryAndIndexes() throws Exception {
+        LdapIndexedEntryStore store = new LdapIndexedEntryStore(Arrays.asList("mail"), Collections.<String>emptyList());
+        store.put(entry("CN=Adams,DC=acme,DC=com", "adams@acme.com", "Sales", "Adams"));
+        store.put(entry("cn=adams, dc=acme, dc=com", "ann.adams@acme.com", "Sales", "Adams"));
+
+        assertEquals(1, store.size());
+        assertTrue(store.find(LdapFilter.parse("(mail=adams@acme.com)"), entry -> true).isEmpty());
+        assertEquals(1, store.find(LdapFilter.parse("(mail=ann.adams@acme.com)"), entry -> true).size());
+    }
+
+    @Test
+    public void test_find_binaryValue() throws Exception {
+        LdapIndexedEntryStore store = new LdapIndexedEntryStore(Arrays.asList("objectGUID"),
+            Collections.<String>emptyList());
+        BasicAttributes attributes = new BasicAttributes(true);
+        attributes.put(new BasicAttribute("objectGUID", new byte[]{(byte)0xab, 0x01}));
+        store.put(new LdapReplica.Entry("CN=Adams,DC=acme,DC=com", attributes, columns, LdapInternPool.NONE));
+
+        assertEquals(1, store.find(LdapFilter.parse("(objectGUID=\\ab\\01)"), entry -> true).size());
+        assertEquals(1, store.getIndexedCount());
+    }
+
+    private LdapReplica.Entry entry(String name, String mail, String department, String displayName)
+        throws Exception
+    {
+        BasicAttributes attributes = new BasicAttributes(true);
+        attributes.put("objectClass", "user");
+        attributes.put("mail", mail);
+        attributes.put("department", department);
+        attributes.put("displayName", displayName);
+        return new LdapReplica.Entry(name, attributes, columns, LdapInternPool.NONE);
+    }
+}
@@ -0,0 +1,39 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LdapInternPoolTest {
+
+    @Test
+    public void test_intern_sharesEqualValues() {
+        LdapInternPool pool = new LdapInternPool(100);
+        String first = new String("CN=Staff,OU=Groups,DC=acme,DC=com");
+        String second = new String("CN=Staff,OU=Groups,DC=acme,DC=com");
+
+        assertSame(first, pool.intern(first));
+        assertSame(first, pool.intern(second));
+        assertEquals(128, pool.getCapacity());
+        assertEquals(1, pool.getHitCount());
+    }
+
+    @Test
+    public void test_intern_staysBounded() {
+        LdapInternPool pool = new LdapInternPool(4);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("value"+i, pool.intern("value"+i));
+        }
+
+        assertEquals(4, pool.getCapacity());
+    }
+
+    @Test
+    public void test_none_sharesNothing() {
+        String first = new String("Sales");
+
+        assertSame(first, LdapInternPool.NONE.intern(first));
+        assertNotSame(first, LdapInternPool.NONE.intern(new String("Sales")));
+        assertNull(LdapInternPool.NONE.intern((String)null));
+    }
+}
@@ -0,0 +1,49 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.Test;
+
+import javax.naming.directory.BasicAttributes;
+
+import static org.junit.Assert.*;
+
+public class LdapProjectionTest {
+
+    @Test
+    public void test_project_caseInsensitiveAttributes() throws Exception {
+        LdapProjection projection = LdapProjection.compile(
+            Arrays.asList("sAMAccountName", "whenCreated", "mail"),
+            name -> "whenCreated".equals(name) ? LdapAdapter.SYNTAX_GENERALIZED_TIME : null);
+
+        BasicAttributes attributes = new BasicAttributes(true);
+        attributes.put("samaccountname", "jdoe");
+        attributes.put("WHENCREATED", "20230629140509.0Z");
+
+        Map<String,Object> record = projection.project(attributes);
+
+        assertEquals(Arrays.asList("sAMAccountName", "whenCreated", "mail"), Arrays.asList(record.keySet().toArray()));
+        assertEquals("jdoe", record.get("sAMAccountName"));
+        assertEquals("2023-06-29T14:05:09+0000", record.get("whenCreated"));
+        assertNull(record.get("mail"));
+        assertTrue(projection.isComplete());
+    }
+
+    @Test
+    public void test_compile_unresolvedSyntax() throws Exception {
+        LdapProjection projection = LdapProjection.compile(Arrays.asList("cn", "unknown"), name -> {
+            if ("unknown".equals(name)) {
+                throw new BridgeError("Unable to determine proper field syntax for field: "+name);
+            }
+            return null;
+        });
+
+        BasicAttributes attributes = new BasicAttributes(true);
+        attributes.put("unknown", "value");
+
+        assertFalse(projection.isComplete());
+        assertEquals("value", projection.project(attributes).get("unknown"));
+        assertArrayEquals(new String[]{"cn", "unknown"}, projection.getReturningAttributes());
+    }
+}
@@ -0,0 +1,81 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LdapQueryTemplateTest {
+
+    @Test
+    public void test_compile_preSplit() throws Exception {
+        LdapQueryTemplate template = LdapQueryTemplate.compile(
+            "OU=SubUsers(samaccountname=<%=parameter[\"samaccountname\"]%>),OU=Users");
+        Map<String,String> parameters = new HashMap<String,String>();
+        parameters.put("samaccountname", "userid");
+
+        assertTrue(template.isPreSplit());
+        assertEquals("OU=SubUsers,OU=Users", template.buildBaseAddition(parameters));
+        assertEquals("(samaccountname=userid)", template.buildFilter(parameters));
+    }
+
+    @Test
+    public void test_compile_parameterizedQuery() throws Exception {
+        LdapQueryTemplate template = LdapQueryTemplate.compile(
+            "<%=parameter[\"Added Search Base\"]%><%=parameter[\"a_query\"]%>");
+        Map<String,String> parameters = new HashMap<String,String>();
+        parameters.put("Added Search Base", "OU=Users");
+        parameters.put("a_query", "(samaccountname=userid)");
+
+        assertFalse(template.isPreSplit());
+        assertEquals("OU=Users", template.buildBaseAddition(parameters));
+        assertEquals("(samaccountname=userid)", template.buildFilter(parameters));
+    }
+
+    @Test
+    public void test_isEntryAddressed() throws Exception {
+        Map<String,String> parameters = new HashMap<String,String>();
+        parameters.put("uid", "555");
+
+        assertTrue(LdapQueryTemplate.compile("uid=<%=parameter[\"uid\"]%>").isEntryAddressed(parameters));
+        assertTrue(LdapQueryTemplate.compile("CN=Mary Olowu,OU=Users").isEntryAddressed(parameters));
+        assertFalse(LdapQueryTemplate.compile("OU=Users(uid=555)").isEntryAddressed(parameters));
+        assertFalse(LdapQueryTemplate.compile("(uid=555)").isEntryAddressed(parameters));
+        assertFalse(LdapQueryTemplate.compile("").isEntryAddressed(parameters));
+    }
+
+    @Test
+    public void test_buildFilter_missingParameter() {
+        LdapQueryTemplate template = LdapQueryTemplate.compile("(samaccountname=<%=parameter[\"samaccountname\"]%>)");
+
+        BridgeError filterError = null;
+        try {
+            template.buildFilter(new HashMap<String,String>());
+        } catch (BridgeError e) {
+            filterError = e;
+        }
+        BridgeError baseError = null;
+        try {
+            template.buildBaseAddition(new HashMap<String,String>());
+        } catch (BridgeError e) {
+            baseError = e;
+        }
+
+        assertNotNull(filterError);
+        assertNotNull(baseError);
+    }
+
+    @Test
+    public void test_buildFilter_lineBreaks() throws Exception {
+        String query = "OU=Users(cn=a)\n(cn=<%=parameter[\"cn\"]%>)";
+        LdapQueryTemplate template = LdapQueryTemplate.compile(query);
+        Map<String,String> parameters = new HashMap<String,String>();
+        parameters.put("cn", "b");
+
+        assertEquals("(cn=a)", template.buildFilter(parameters));
+        assertEquals("OU=Users\n", template.buildBaseAddition(parameters));
+    }
+}
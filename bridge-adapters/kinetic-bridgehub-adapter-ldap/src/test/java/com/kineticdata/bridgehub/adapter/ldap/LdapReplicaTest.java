@@ -0,0 +1,153 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LdapReplicaTest {
+
+    @Test
+    public void test_find_servesLoadedEntries() throws Exception {
+        FakeSource source = new FakeSource();
+        source.add("CN=Adams,OU=Sales,DC=acme,DC=com", "user", "adams", "10");
+        source.add("CN=Baker,OU=Support,DC=acme,DC=com", "user", "baker", "11");
+        LdapReplica replica = new LdapReplica(source, LdapReplicaTest::store, new LdapInternPool(64), Arrays.asList("User"),
+            Arrays.asList("DC=acme,DC=com"), true, 0, 0);
+
+        assertNull(replica.find("user", Arrays.asList("DC=acme,DC=com"), false,
+            LdapFilter.parse("(objectClass=user)"), Collections.<String>emptyList()));
+        replica.synchronize();
+
+        assertEquals(2, replica.find("user", Arrays.asList("DC=acme,DC=com"), false,
+            LdapFilter.parse("(objectClass=user)"), Arrays.asList("sAMAccountName")).size());
+        List<LdapReplica.Entry> sales = replica.find("User", Arrays.asList("ou=sales, dc=acme, dc=com"), false,
+            LdapFilter.parse("(&(objectClass=user)(samaccountname=ADAMS))"), Arrays.asList("sAMAccountName"));
+        assertEquals(1, sales.size());
+        assertEquals("CN=Adams,OU=Sales,DC=acme,DC=com", sales.get(0).getName());
+        assertEquals("adams", sales.get(0).toAttributes().get("sAMAccountName").get());
+        // Entry addressed reads only match the named entry
+        assertEquals(1, replica.find("user", Arrays.asList("CN=Baker,OU=Support,DC=acme,DC=com"), true,
+            LdapFilter.parse("(objectClass=user)"), Collections.<String>emptyList()).size());
+    }
+
+    @Test
+    public void test_find_fallsBackWhenUnableToAnswer() throws Exception {
+        FakeSource source = new FakeSource();
+        source.add("CN=Adams,OU=Sales,DC=acme,DC=com", "user", "adams", "10");
+        LdapReplica replica = new LdapReplica(source, LdapReplicaTest::store, new LdapInternPool(64), Arrays.asList("user"),
+            Arrays.asList("OU=Sales,DC=acme,DC=com"), true, 0, 0);
+        replica.synchronize();
+
+        // Structure, field, filter attribute and search base not replicated
+        assertNull(replica.find("group", Arrays.asList("OU=Sales,DC=acme,DC=com"), false,
+            LdapFilter.parse("(objectClass=group)"), Collections.<String>emptyList()));
+        assertNull(replica.find("user", Arrays.asList("OU=Sales,DC=acme,DC=com"), false,
+            LdapFilter.parse("(objectClass=user)"), Arrays.asList("memberOf")));
+        assertNull(replica.find("user", Arrays.asList("OU=Sales,DC=acme,DC=com"), false,
+            LdapFilter.parse("(&(objectClass=user)(memberOf=CN=Staff))"), Collections.<String>emptyList()));
+        assertNull(replica.find("user", Arrays.asList("DC=acme,DC=com"), false,
+            LdapFilter.parse("(objectClass=user)"), Collections.<String>emptyList()));
+    }
+
+    @Test
+    public void test_synchronize_pollsChangedEntries() throws Exception {
+        FakeSource source = new FakeSource();
+        source.add("CN=Adams,OU=Sales,DC=acme,DC=com", "user", "adams", "10");
+        LdapReplica replica = new LdapReplica(source, LdapReplicaTest::store, new LdapInternPool(64), Arrays.asList("user"),
+            Arrays.asList("DC=acme,DC=com"), true, 60000, 0);
+        replica.synchronize();
+
+        source.add("CN=Baker,OU=Sales,DC=acme,DC=com", "user", "baker", "12");
+        replica.synchronize();
+
+        assertEquals("(&(objectClass=user)(uSNChanged>=11))", source.filters.get(1));
+        assertEquals(2, replica.size("user"));
+    }
+
+    @Test
+    public void test_entry_sharesColumnsAndValues() throws Exception {
+        LdapColumns columns = new LdapColumns();
+        LdapInternPool pool = new LdapInternPool(64);
+        BasicAttributes first = new BasicAttributes(true);
+        first.put("department", new String("Sales"));
+        first.put(new BasicAttribute("memberOf", "CN=Staff,DC=acme,DC=com"));
+        first.get("memberOf").add("CN=Sales,DC=acme,DC=com");
+        BasicAttributes second = new BasicAttributes(true);
+        second.put("Department", new String("Sales"));
+
+        LdapReplica.Entry adams = new LdapReplica.Entry("CN=Adams,DC=acme,DC=com", first, columns, pool);
+        LdapReplica.Entry baker = new LdapReplica.Entry("CN=Baker,DC=acme,DC=com", second, columns, pool);
+
+        assertEquals(2, columns.size());
+        assertSame(adams.get("department").get(0), baker.get("department").get(0));
+        assertEquals(Arrays.asList("CN=Staff,DC=acme,DC=com", "CN=Sales,DC=acme,DC=com"), adams.get("memberof"));
+        assertNull(baker.get("memberof"));
+        assertEquals(2, adams.toAttributes().get("memberOf").size());
+    }
+
+    @Test
+    public void test_isInScope() {
+        List<String> scopes = Arrays.asList("ou=sales,dc=acme,dc=com");
+
+        assertTrue(LdapReplica.isInScope("cn=adams,ou=sales,dc=acme,dc=com", scopes, false));
+        assertTrue(LdapReplica.isInScope("ou=sales,dc=acme,dc=com", scopes, true));
+        assertFalse(LdapReplica.isInScope("cn=adams,ou=sales,dc=acme,dc=com", scopes, true));
+        assertFalse(LdapReplica.isInScope("ou=presales,dc=acme,dc=com", scopes, false));
+        assertFalse(LdapReplica.isInScope("cn=x\\,ou=sales,dc=acme,dc=com", scopes, false));
+    }
+
+    private static LdapEntryStore store() {
+        return new LdapIndexedEntryStore(Arrays.asList("sAMAccountName"), Collections.<String>emptyList());
+    }
+
+    /**
+     * Directory of user entries answering the replica searches, entries with
+     * an update sequence number below a uSNChanged filter being skipped.
+     */
+    private static class FakeSource implements LdapReplica.Source {
+        private final List<BasicAttributes> entries = new ArrayList<>();
+        private final List<String> names = new ArrayList<>();
+        private final List<String> filters = new ArrayList<>();
+
+        void add(String name, String objectClass, String account, String usn) {
+            BasicAttributes attributes = new BasicAttributes(true);
+            attributes.put("objectClass", objectClass);
+            attributes.put("sAMAccountName", account);
+            attributes.put("uSNChanged", usn);
+            names.add(name);
+            entries.add(attributes);
+        }
+
+        @Override
+        public List<String> getFields(String structure) {
+            return Arrays.asList("sAMAccountName");
+        }
+
+        @Override
+        public void search(String base, String filter, String[] attributes,
+            LdapReplica.EntryHandler handler
+        ) throws BridgeError {
+            filters.add(filter);
+            int since = filter.contains(">=")
+                ? Integer.parseInt(filter.substring(filter.indexOf(">=") + 2, filter.indexOf(')', filter.indexOf(">="))))
+                : 0;
+            try {
+                for (int i = 0; i < entries.size(); i++) {
+                    if (Integer.parseInt(entries.get(i).get("uSNChanged").get().toString()) >= since) {
+                        handler.handle(names.get(i), entries.get(i));
+                    }
+                }
+            } catch (NamingException e) {
+                throw new BridgeError("Unable to read the entry", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LdapRequestCoalescerTest {
+
+    @Test
+    public void test_execute_sharesInFlightOperation() throws Exception {
+        LdapRequestCoalescer<List<String>> coalescer = new LdapRequestCoalescer<>(ArrayList::new);
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> coalescer.execute("key", () -> {
+                executions.incrementAndGet();
+                started.countDown();
+                await(release);
+                List<String> result = new ArrayList<>();
+                result.add("value");
+                return result;
+            })));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++) {
+                futures.add(executor.submit(() -> coalescer.execute("key", () -> {
+                    executions.incrementAndGet();
+                    return new ArrayList<String>();
+                })));
+            }
+            while (coalescer.getCoalescedCount() < 3) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            List<List<String>> results = new ArrayList<>();
+            for (Future<List<String>> future : futures) {
+                results.add(future.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, executions.get());
+            for (List<String> result : results) {
+                assertEquals("value", result.get(0));
+            }
+            // Every caller gets its own copy
+            results.get(0).clear();
+            assertEquals(1, results.get(1).size());
+            assertNotSame(results.get(1), results.get(2));
+            assertEquals(0, coalescer.getInFlightCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_execute_doesNotKeepResults() throws Exception {
+        LdapRequestCoalescer<String> coalescer = new LdapRequestCoalescer<>(value -> value);
+        AtomicInteger executions = new AtomicInteger();
+
+        coalescer.execute("key", () -> "first"+executions.incrementAndGet());
+        String second = coalescer.execute("key", () -> "second"+executions.incrementAndGet());
+
+        assertEquals("second2", second);
+        assertEquals(2, coalescer.getExecutionCount());
+        assertEquals(0, coalescer.getCoalescedCount());
+    }
+
+    @Test
+    public void test_execute_sharesError() throws Exception {
+        LdapRequestCoalescer<String> coalescer = new LdapRequestCoalescer<>(value -> value);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() -> coalescer.execute("key", () -> {
+                started.countDown();
+                await(release);
+                throw new BridgeError("Unable to connect to the specified LDAP server.");
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<String> follower = executor.submit(() -> coalescer.execute("key", () -> "unexpected"));
+            while (coalescer.getCoalescedCount() < 1) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            for (Future<String> future : new Future[]{leader, follower}) {
+                try {
+                    future.get(5, TimeUnit.SECONDS);
+                    fail("Expected the shared error");
+                } catch (java.util.concurrent.ExecutionException e) {
+                    assertTrue(e.getCause() instanceof BridgeError);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) throws BridgeError {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new BridgeError("Interrupted", e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.Record;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LdapResultCacheTest {
+
+    @Test
+    public void test_get_returnsCopies() throws Exception {
+        LdapResultCache cache = new LdapResultCache(1024 * 1024, 60000, Collections.<String,Long>emptyMap(),
+            LdapInternPool.NONE);
+        AtomicInteger loads = new AtomicInteger();
+
+        RecordList first = cache.get("key", "User", () -> {
+            loads.incrementAndGet();
+            return recordList("jdoe");
+        });
+        first.getRecords().get(0).getRecord().put("sAMAccountName", "changed");
+        RecordList second = cache.get("key", "User", () -> {
+            loads.incrementAndGet();
+            return recordList("other");
+        });
+
+        assertEquals(1, loads.get());
+        assertEquals("jdoe", second.getRecords().get(0).getRecord().get("sAMAccountName"));
+        assertEquals(1, cache.getHitCount());
+        cache.close();
+    }
+
+    @Test
+    public void test_get_evictsLeastRecentlyUsedOverMemoryBound() throws Exception {
+        long size = LdapCompactRecordList.of(recordList("user0"), LdapInternPool.NONE).getBytes();
+        LdapResultCache cache = new LdapResultCache(size * 2, 60000, Collections.<String,Long>emptyMap(),
+            LdapInternPool.NONE);
+
+        cache.get("a", "User", () -> recordList("user0"));
+        cache.get("b", "User", () -> recordList("user1"));
+        cache.get("a", "User", () -> recordList("reloaded"));
+        cache.get("c", "User", () -> recordList("user2"));
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.getBytes() <= size * 2);
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals("user0", cache.get("a", "User", () -> recordList("reloaded"))
+            .getRecords().get(0).getRecord().get("sAMAccountName"));
+        cache.close();
+    }
+
+    @Test
+    public void test_get_usesStructureTtl() throws Exception {
+        Map<String,Long> ttls = LdapResultCache.parseTtls("Group=0, user = 600");
+        LdapResultCache cache = new LdapResultCache(1024 * 1024, 0, ttls, LdapInternPool.NONE);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("group", "group", () -> recordList("g"+loads.incrementAndGet()));
+        cache.get("group", "group", () -> recordList("g"+loads.incrementAndGet()));
+        cache.get("user", "User", () -> recordList("u"+loads.incrementAndGet()));
+        cache.get("user", "User", () -> recordList("u"+loads.incrementAndGet()));
+
+        assertEquals(600000L, cache.getTtl("USER"));
+        assertEquals(3, loads.get());
+        assertEquals(1, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void test_get_servesStaleWhileRefreshing() throws Exception {
+        LdapResultCache cache = new LdapResultCache(1024 * 1024, 200, Collections.<String,Long>emptyMap(),
+            LdapInternPool.NONE);
+
+        cache.get("key", "User", () -> recordList("old"));
+        Thread.sleep(220);
+        RecordList stale = cache.get("key", "User", () -> recordList("new"));
+        for (int i = 0; i < 100 && cache.getRefreshCount() == 0; i++) {
+            Thread.sleep(5);
+        }
+        RecordList refreshed = cache.get("key", "User", () -> recordList("unexpected"));
+
+        assertEquals("old", stale.getRecords().get(0).getRecord().get("sAMAccountName"));
+        assertEquals("new", refreshed.getRecords().get(0).getRecord().get("sAMAccountName"));
+        assertEquals(1, cache.getStaleHitCount());
+        cache.close();
+    }
+
+    private static RecordList recordList(String name) {
+        Map<String,Object> values = new LinkedHashMap<String,Object>();
+        values.put("sAMAccountName", name);
+        List<Record> records = new ArrayList<Record>();
+        records.add(new Record(values));
+        return new RecordList(Collections.singletonList("sAMAccountName"), records, new LinkedHashMap<String,String>());
+    }
+}
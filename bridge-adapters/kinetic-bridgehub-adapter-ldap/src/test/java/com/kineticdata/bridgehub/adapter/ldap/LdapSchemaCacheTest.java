@@ -0,0 +1,121 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LdapSchemaCacheTest {
+
+    @Test
+    public void test_get_caseInsensitive() throws Exception {
+        LdapSchemaCache<String> cache = new LdapSchemaCache<String>("test", 0, 10, null, null);
+
+        assertEquals("syntax", cache.get("whenCreated", key -> "syntax"));
+        assertEquals("syntax", cache.get("WHENCREATED", key -> "other"));
+
+        assertEquals(1, cache.getLoadCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void test_get_singleFlight() throws Exception {
+        LdapSchemaCache<String> cache = new LdapSchemaCache<String>("test", 0, 10, null, null);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        LdapSchemaCache.Loader<String> loader = key -> {
+            loads.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new BridgeError("Interrupted", e);
+            }
+            return "value";
+        };
+
+        List<Thread> threads = new ArrayList<>();
+        List<String> results = java.util.Collections.synchronizedList(new ArrayList<String>());
+        for (int i = 0; i < 5; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    results.add(cache.get("cn", loader));
+                } catch (BridgeError e) {
+                    results.add(e.getMessage());
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        started.await(5, TimeUnit.SECONDS);
+        Thread.sleep(100);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(5, results.size());
+        for (String result : results) {
+            assertEquals("value", result);
+        }
+    }
+
+    @Test
+    public void test_get_failureNotCached() throws Exception {
+        LdapSchemaCache<String> cache = new LdapSchemaCache<String>("test", 0, 10, null, null);
+
+        BridgeError expectedError = null;
+        try {
+            cache.get("cn", key -> {
+                throw new BridgeError("Unable to determine proper field syntax for field: "+key);
+            });
+        } catch (BridgeError e) {
+            expectedError = e;
+        }
+
+        assertNotNull(expectedError);
+        assertEquals("value", cache.get("cn", key -> "value"));
+        assertEquals(1, cache.getLoadFailureCount());
+    }
+
+    @Test
+    public void test_get_expiredValueRefreshedInBackground() throws Exception {
+        CountDownLatch changed = new CountDownLatch(1);
+        LdapSchemaCache<String> cache = new LdapSchemaCache<String>("test", 1, 10,
+            key -> "new", changed::countDown);
+
+        cache.put("cn", "old");
+        Thread.sleep(10);
+
+        // The stale value is served while the refresh runs
+        assertEquals("old", cache.get("cn", key -> "loaded"));
+        assertTrue(changed.await(5, TimeUnit.SECONDS));
+        assertEquals("new", cache.getIfPresent("cn"));
+        assertEquals(1, cache.getRefreshCount());
+        cache.close();
+    }
+
+    @Test
+    public void test_put_evictsOldest() throws Exception {
+        LdapSchemaCache<String> cache = new LdapSchemaCache<String>("test", 0, 2, null, null);
+
+        cache.put("a", "1");
+        Thread.sleep(2);
+        cache.put("b", "2");
+        Thread.sleep(2);
+        cache.put("c", "3");
+
+        assertEquals(2, cache.size());
+        assertNull(cache.getIfPresent("a"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+}
@@ -0,0 +1,108 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.Record;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LdapSearchBasesTest {
+
+    @Test
+    public void test_split() {
+        assertEquals(Arrays.asList("OU=Sales,DC=acme,DC=com", "OU=R\\;D,DC=acme,DC=com"),
+            LdapSearchBases.split(" OU=Sales,DC=acme,DC=com ; OU=R\\;D,DC=acme,DC=com;"));
+        assertEquals(Arrays.asList("DC=acme,DC=com"), LdapSearchBases.split("DC=acme,DC=com"));
+    }
+
+    @Test
+    public void test_prune_removesNestedAndDuplicateBases() {
+        List<String> bases = Arrays.asList(
+            "OU=East,OU=Sales,DC=acme,DC=com",
+            "OU=Sales,DC=acme,DC=com",
+            "ou=sales, dc=acme, dc=com",
+            "OU=Support,DC=acme,DC=com");
+
+        assertEquals(Arrays.asList("OU=Sales,DC=acme,DC=com", "OU=Support,DC=acme,DC=com"),
+            LdapSearchBases.prune(bases));
+    }
+
+    @Test
+    public void test_run_keepsBaseOrder() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<String> results = LdapSearchBases.run(executor, Arrays.asList("a", "b", "c"), base -> {
+                if ("a".equals(base)) {
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        throw new BridgeError("Interrupted", e);
+                    }
+                }
+                return base.toUpperCase();
+            });
+
+            assertEquals(Arrays.asList("A", "B", "C"), results);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void test_run_throwsSearchError() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        BridgeError expectedError = null;
+        try {
+            LdapSearchBases.run(executor, Arrays.asList("a", "b"), base -> {
+                if ("b".equals(base)) {
+                    throw new BridgeError("Unable to search "+base);
+                }
+                return base;
+            });
+        } catch (BridgeError e) {
+            expectedError = e;
+        } finally {
+            executor.shutdown();
+        }
+
+        assertNotNull(expectedError);
+        assertEquals("Unable to search b", expectedError.getMessage());
+    }
+
+    @Test
+    public void test_merge_sortsAndRemovesDuplicateEntries() {
+        Map<Record,String> names = new IdentityHashMap<Record,String>();
+        List<Record> first = Arrays.asList(
+            record(names, "Adams", "CN=Adams,OU=Sales"),
+            record(names, "Jones", "CN=Jones,OU=Sales"));
+        List<Record> second = Arrays.asList(
+            record(names, "Baker", "CN=Baker,OU=Support"),
+            record(names, "Jones", "cn=jones,ou=sales"),
+            record(names, "Young", "CN=Young,OU=Support"));
+
+        List<Record> merged = LdapSearchBases.merge(Arrays.asList(first, second), names,
+            (a, b) -> a.getRecord().get("sn").toString().compareTo(b.getRecord().get("sn").toString()));
+
+        List<Object> values = new ArrayList<Object>();
+        for (Record record : merged) {
+            values.add(record.getRecord().get("sn"));
+        }
+        assertEquals(Arrays.<Object>asList("Adams", "Baker", "Jones", "Young"), values);
+    }
+
+    private static Record record(Map<Record,String> names, String sn, String dn) {
+        Map<String,Object> values = new LinkedHashMap<String,Object>();
+        values.put("sn", sn);
+        Record record = new Record(values);
+        names.put(record, dn);
+        return record;
+    }
+}
@@ -0,0 +1,162 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.naming.CommunicationException;
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import static org.junit.Assert.*;
+
+public class LdapServerGroupTest {
+
+    @Test
+    public void test_parseUrls() {
+        assertEquals(Arrays.asList("ldap://dc1.acme.com:389", "ldap://dc2.acme.com:3268", "ldap://[::1]:389"),
+            LdapServerGroup.parseUrls("dc1.acme.com, dc2.acme.com:3268 [::1]", "389", false));
+        assertEquals(Arrays.asList("ldaps://127.0.0.1:636"),
+            LdapServerGroup.parseUrls("127.0.0.1", "636", true));
+    }
+
+    @Test
+    public void test_borrow_prefersLeastOutstanding() throws Exception {
+        LdapServerGroup group = group(new AtomicBoolean(true), new AtomicBoolean(true));
+
+        LdapContext first = group.borrow();
+        LdapContext second = group.borrow();
+
+        assertEquals(1, group.getServers().get(0).getOutstanding());
+        assertEquals(1, group.getServers().get(1).getOutstanding());
+        group.release(first);
+        group.release(second);
+        assertEquals(0, group.getServers().get(0).getOutstanding());
+        group.close();
+    }
+
+    @Test
+    public void test_borrow_failsOverToReachableServer() throws Exception {
+        LdapServerGroup group = group(new AtomicBoolean(false), new AtomicBoolean(true));
+
+        LdapContext context = group.borrow();
+
+        assertTrue(group.getServers().get(0).isDown(System.currentTimeMillis()));
+        assertEquals(1, group.getServers().get(1).getOutstanding());
+        group.release(context);
+        group.close();
+    }
+
+    @Test
+    public void test_invalidate_marksServerDownUntilHealthCheck() throws Exception {
+        AtomicBoolean firstUp = new AtomicBoolean(true);
+        LdapServerGroup group = group(firstUp, new AtomicBoolean(true));
+
+        LdapContext context = group.borrow();
+        group.invalidate(context);
+        group.release(context);
+        LdapContext next = group.borrow();
+
+        assertTrue(group.getServers().get(0).isDown(System.currentTimeMillis()));
+        assertEquals(1, group.getServers().get(1).getOutstanding());
+        group.release(next);
+
+        group.checkHealth();
+        assertFalse(group.getServers().get(0).isDown(System.currentTimeMillis()));
+        group.close();
+    }
+
+    @Test
+    public void test_release_doesNotRecordLeaseLatency() throws Exception {
+        LdapServerGroup group = group(new AtomicBoolean(true), new AtomicBoolean(true));
+
+        LdapContext context = group.borrow();
+        Thread.sleep(50);
+        group.release(context);
+
+        assertTrue(group.getServers().get(0).getLatencyMillis() == 0);
+        assertTrue(group.getServers().get(1).getLatencyMillis() == 0);
+        group.close();
+    }
+
+    @Test
+    public void test_checkHealth_skipsSaturatedServer() throws Exception {
+        LdapServerGroup group = group(new AtomicBoolean(true), new AtomicBoolean(true));
+        LdapContextPool pool = group.getServers().get(0).getPool();
+        LdapContext leased = pool.borrow();
+        String id = pool.park(pool.borrow());
+
+        long start = System.currentTimeMillis();
+        group.checkHealth();
+
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertFalse(group.getServers().get(0).isDown(System.currentTimeMillis()));
+        assertTrue(group.getServers().get(1).getLatencyMillis() > 0);
+        LdapContext resumed = pool.resume(id);
+        assertNotNull(resumed);
+        pool.release(resumed);
+        pool.release(leased);
+        group.close();
+    }
+
+    @Test
+    public void test_park_resumesOnSameServer() throws Exception {
+        LdapServerGroup group = group(new AtomicBoolean(false), new AtomicBoolean(true));
+
+        LdapContext context = group.borrow();
+        String id = group.park(context);
+
+        assertTrue(id.startsWith("1_"));
+        assertSame(context, group.resume(id));
+        assertNull(group.resume("7_"+id.substring(2)));
+        group.release(context);
+        group.close();
+    }
+
+    private static LdapServerGroup group(AtomicBoolean... reachable) {
+        LdapServerGroup.Server[] servers = new LdapServerGroup.Server[reachable.length];
+        for (int i = 0; i < reachable.length; i++) {
+            AtomicBoolean up = reachable[i];
+            servers[i] = new LdapServerGroup.Server("ldap://server"+i+":389",
+                new LdapContextPool(() -> connect(up), 0, 2, 60000, 0, 1000));
+        }
+        return new LdapServerGroup(Arrays.asList(servers));
+    }
+
+    private static LdapContext connect(AtomicBoolean up) throws BridgeError {
+        if (!up.get()) {
+            throw new BridgeError("Unable to connect to the specified LDAP server.",
+                new CommunicationException("Connection refused"));
+        }
+        try {
+            return new FakeContext();
+        } catch (NamingException e) {
+            throw new BridgeError("Unable to build the test context.", e);
+        }
+    }
+
+    /**
+     * Context that never connects, used to exercise the group bookkeeping.
+     */
+    private static class FakeContext extends InitialLdapContext {
+        FakeContext() throws NamingException {
+            super();
+        }
+
+        @Override
+        public void setRequestControls(Control[] requestControls) {}
+
+        @Override
+        public Attributes getAttributes(String name, String[] attributes) {
+            return new BasicAttributes("supportedLDAPVersion", "3");
+        }
+
+        @Override
+        public void close() {}
+    }
+}
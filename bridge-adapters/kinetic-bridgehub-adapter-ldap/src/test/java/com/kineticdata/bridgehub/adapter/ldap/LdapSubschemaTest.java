@@ -0,0 +1,72 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LdapSubschemaTest {
+
+    private static LdapSubschema buildSubschema() throws Exception {
+        return LdapSubschema.parse(
+            Arrays.asList(
+                "( 2.5.4.41 NAME 'name' EQUALITY caseIgnoreMatch SUBSTR caseIgnoreSubstringsMatch SYNTAX 1.3.6.1.4.1.1466.115.121.1.15{32768} )",
+                "( 2.5.4.3 NAME ( 'cn' 'commonName' ) DESC 'RFC4519: common name(s) for which the entity is known by' SUP name )",
+                "( 2.5.4.4 NAME ( 'sn' 'surname' ) SUP name )",
+                "( 0.9.2342.19200300.100.1.3 NAME ( 'mail' 'rfc822Mailbox' ) SYNTAX '1.3.6.1.4.1.1466.115.121.1.26' SINGLE-VALUE )",
+                "( 2.5.18.1 NAME 'createTimestamp' SYNTAX 1.3.6.1.4.1.1466.115.121.1.24 SINGLE-VALUE NO-USER-MODIFICATION USAGE directoryOperation )",
+                "( 2.5.4.0 NAME 'objectClass' SYNTAX 1.3.6.1.4.1.1466.115.121.1.38 )"
+            ),
+            Arrays.asList(
+                "( 2.5.6.0 NAME 'top' ABSTRACT MUST objectClass )",
+                "( 2.5.6.6 NAME 'person' SUP top STRUCTURAL MUST ( sn $ cn ) MAY ( description $ telephoneNumber ) )",
+                "( 2.16.840.1.113730.3.2.2 NAME 'inetOrgPerson' SUP ( organizationalPerson ) STRUCTURAL MAY mail )",
+                "( 2.5.6.7 NAME 'organizationalPerson' SUP person STRUCTURAL MAY title )"
+            ),
+            "20230629140509Z");
+    }
+
+    @Test
+    public void test_getSyntax_followsSuperiorChain() throws Exception {
+        LdapSubschema subschema = buildSubschema();
+
+        assertEquals("1.3.6.1.4.1.1466.115.121.1.15", subschema.getSyntax("name"));
+        assertEquals("1.3.6.1.4.1.1466.115.121.1.15", subschema.getSyntax("cn"));
+        assertEquals("1.3.6.1.4.1.1466.115.121.1.15", subschema.getSyntax("commonName"));
+        assertEquals("1.3.6.1.4.1.1466.115.121.1.15", subschema.getSyntax("2.5.4.4"));
+        assertEquals("1.3.6.1.4.1.1466.115.121.1.26", subschema.getSyntax("MAIL"));
+        assertEquals(LdapAdapter.SYNTAX_GENERALIZED_TIME, subschema.getSyntax("createTimestamp"));
+        assertNull(subschema.getSyntax("unknown"));
+    }
+
+    @Test
+    public void test_getStructureFields_inheritedAttributes() throws Exception {
+        LdapSubschema subschema = buildSubschema();
+
+        assertEquals(Arrays.asList("cn", "description", "mail", "sn", "telephoneNumber", "title"),
+            subschema.getStructureFields("inetOrgPerson"));
+        assertEquals(Arrays.asList("cn", "description", "sn", "telephoneNumber"),
+            subschema.getStructureFields("PERSON"));
+        assertNull(subschema.getStructureFields("unknown"));
+    }
+
+    @Test
+    public void test_getStructures() throws Exception {
+        LdapSubschema subschema = buildSubschema();
+
+        assertEquals(Arrays.asList("inetOrgPerson", "organizationalPerson", "person", "top"), subschema.getStructures());
+        assertEquals("20230629140509Z", subschema.getModifyTimestamp());
+    }
+
+    @Test
+    public void test_parse_invalidDescription() {
+        Exception expectedError = null;
+        try {
+            LdapSubschema.parse(Arrays.asList("2.5.4.3 NAME 'cn'"), Arrays.<String>asList(), null);
+        } catch (Exception e) {
+            expectedError = e;
+        }
+
+        assertNotNull(expectedError);
+    }
+}
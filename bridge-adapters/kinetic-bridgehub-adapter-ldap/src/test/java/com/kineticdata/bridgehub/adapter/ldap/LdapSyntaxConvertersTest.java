@@ -0,0 +1,78 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import org.junit.Test;
+
+import javax.naming.directory.BasicAttribute;
+
+import static org.junit.Assert.*;
+
+public class LdapSyntaxConvertersTest {
+
+    @Test
+    public void test_generalizedTime_activeDirectoryFormat() throws Exception {
+        LdapSyntaxConverters.Converter converter =
+            LdapSyntaxConverters.DEFAULT.get("whenCreated", LdapAdapter.SYNTAX_GENERALIZED_TIME);
+
+        assertEquals("2023-06-29T14:05:09+0000", converter.convert("20230629140509.0Z"));
+    }
+
+    @Test
+    public void test_generalizedTime_offsetAndFraction() throws Exception {
+        LdapSyntaxConverters.Converter converter = LdapSyntaxConverters.GENERALIZED_TIME_CONVERTER;
+
+        assertEquals("2023-06-29T12:05:09+0000", converter.convert("20230629140509,5+0200"));
+        assertEquals("2023-06-29T14:30:00+0000", converter.convert("2023062914.5Z"));
+        assertEquals("2023-06-29T14:05:00+0000", converter.convert("202306291405Z"));
+    }
+
+    @Test
+    public void test_generalizedTime_invalidValue() {
+        BridgeError expectedError = null;
+        try {
+            LdapSyntaxConverters.GENERALIZED_TIME_CONVERTER.convert("not a date");
+        } catch (BridgeError e) {
+            expectedError = e;
+        }
+
+        assertNotNull(expectedError);
+    }
+
+    @Test
+    public void test_filetime_lastLogonTimestamp() throws Exception {
+        LdapSyntaxConverters.Converter converter =
+            LdapSyntaxConverters.DEFAULT.get("lastLogonTimestamp", LdapSyntaxConverters.SYNTAX_AD_INTEGER8);
+
+        assertEquals("2023-06-29T14:05:09+0000", converter.convert("133325211090000000"));
+        assertEquals("0", converter.convert("0"));
+        assertEquals("9223372036854775807", converter.convert("9223372036854775807"));
+    }
+
+    @Test
+    public void test_integer8_notFiletime() throws Exception {
+        LdapSyntaxConverters.Converter converter =
+            LdapSyntaxConverters.DEFAULT.get("uSNChanged", LdapSyntaxConverters.SYNTAX_AD_INTEGER8);
+
+        assertEquals("12345", converter.convert("12345"));
+    }
+
+    @Test
+    public void test_boolean() throws Exception {
+        LdapSyntaxConverters.Converter converter =
+            LdapSyntaxConverters.DEFAULT.get("isDeleted", LdapSyntaxConverters.SYNTAX_BOOLEAN);
+
+        assertEquals("true", converter.convert("TRUE"));
+        assertEquals("false", converter.convert("FALSE"));
+    }
+
+    @Test
+    public void test_convert_multipleValues() throws Exception {
+        BasicAttribute attribute = new BasicAttribute("memberOf");
+        attribute.add("cn=A,dc=acme,dc=com");
+        attribute.add("cn=B,dc=acme,dc=com");
+
+        String value = LdapSyntaxConverters.convert(LdapSyntaxConverters.DEFAULT_CONVERTER, attribute);
+
+        assertEquals("[\"cn=A,dc=acme,dc=com\",\"cn=B,dc=acme,dc=com\"]", value);
+    }
+}
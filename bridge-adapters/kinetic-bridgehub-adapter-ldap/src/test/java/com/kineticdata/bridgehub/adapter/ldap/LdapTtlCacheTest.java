@@ -0,0 +1,62 @@
+package com.kineticdata.bridgehub.adapter.ldap;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LdapTtlCacheTest {
+
+    @Test
+    public void test_get_countsHitsAndMisses() {
+        LdapTtlCache<String,Long> cache = new LdapTtlCache<>(60000, 10);
+
+        assertNull(cache.get("a"));
+        cache.put("a", 5L);
+
+        assertEquals(Long.valueOf(5L), cache.get("a"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void test_get_expiresEntries() throws Exception {
+        LdapTtlCache<String,Long> cache = new LdapTtlCache<>(1, 10);
+
+        cache.put("a", 5L);
+        Thread.sleep(5);
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void test_put_evictsLeastRecentlyUsed() {
+        LdapTtlCache<String,Long> cache = new LdapTtlCache<>(60000, 2);
+
+        cache.put("a", 1L);
+        cache.put("b", 2L);
+        cache.get("a");
+        cache.put("c", 3L);
+
+        assertEquals(Long.valueOf(1L), cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void test_searchKey_normalizesSearchBase() {
+        assertEquals(
+            LdapTtlCache.searchKey("OU=Users,DC=acme,DC=com", "(objectClass=user)"),
+            LdapTtlCache.searchKey("ou=users, dc=ACME, dc=com", "(objectClass=user)")
+        );
+    }
+
+    @Test
+    public void test_searchKey_normalizesEachSearchBase() {
+        String key = LdapTtlCache.searchKey(Arrays.asList("OU=A,DC=x", "OU=B,DC=x"), "(objectClass=user)");
+
+        assertEquals(key, LdapTtlCache.searchKey(Arrays.asList("ou=b, dc=X", "ou=a, dc=X"), "(objectClass=user)"));
+        assertFalse(key.equals(LdapTtlCache.searchKey("OU=A,DC=x;OU=B,DC=x", "(objectClass=user)")));
+    }
+}